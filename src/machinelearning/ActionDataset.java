@@ -0,0 +1,86 @@
+package machinelearning;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+import util.Util;
+
+/**
+ * Dataset with one instance per state, labelled by the actions allowed in the state <br>
+ * It is |actions| times smaller than the yes/no dataset of state-action pairs it is made of. <br>
+ * Every distinct label is one class of the multi-class ActionTree.
+ * @author vtoman - Viktor Toman
+ * viktor.toman@ist.ac.at
+ *
+ */
+public class ActionDataset {
+
+	public ArrayList<String> attributes;           // the state attributes
+	public int actionBits;
+	public ArrayList<ArrayList<Boolean>> states;
+	public int[] classes;                          // class of the state i
+	public ArrayList<BitSet> labels;               // actions of the class c, bit i - action i (as in Util.binary)
+	public char labelmode;
+
+	/**
+	 * Groups the state-action instances of a given dataset by their states
+	 * @param data				Yes/no dataset, the state attributes go first
+	 * @param stateAttributes	Number of the state attributes
+	 * @param labelmode			'a'llowed - label is the set of all YES actions, <br>
+	 * 							'c'hosen - label is the lowest YES action only (a deterministic controller)
+	 */
+	public ActionDataset(Dataset data, int stateAttributes, char labelmode) {
+		assert(labelmode == 'a' || labelmode == 'c');
+		assert(stateAttributes >= 1 && stateAttributes < data.attributes.size());
+		this.labelmode = labelmode;
+		this.attributes = new ArrayList<String>(data.attributes.subList(0, stateAttributes));
+		this.actionBits = data.attributes.size() - stateAttributes;
+
+		// states in the order of their first instance,
+		// read from the packed rows (the instances of a memory-mapped dataset are not loaded)
+		int numAtt = data.attributes.size();
+		int rowWords = (numAtt + 64) >>> 6;
+		long[] rows = data.rows(false);
+		LinkedHashMap<ArrayList<Boolean>,BitSet> allowed = new LinkedHashMap<ArrayList<Boolean>,BitSet>();
+		ArrayList<Boolean> action = new ArrayList<Boolean>(actionBits);
+		for (int r=0; r<rows.length/rowWords; r++) {
+			ArrayList<Boolean> state = new ArrayList<Boolean>(stateAttributes);
+			for (int i=0; i<stateAttributes; i++)
+				state.add(((rows[r*rowWords + (i >>> 6)] >>> i) & 1L) != 0);
+			BitSet actions = allowed.get(state);
+			if (actions == null) {
+				actions = new BitSet();
+				allowed.put(state, actions);
+			}
+			if (((rows[r*rowWords + (numAtt >>> 6)] >>> numAtt) & 1L) != 0) {
+				action.clear();
+				for (int i=stateAttributes; i<numAtt; i++)
+					action.add(((rows[r*rowWords + (i >>> 6)] >>> i) & 1L) != 0);
+				actions.set(Util.decimal(action));
+			}
+		}
+
+		this.states = new ArrayList<ArrayList<Boolean>>(allowed.keySet());
+		this.classes = new int[states.size()];
+		this.labels = new ArrayList<BitSet>();
+		HashMap<BitSet,Integer> known = new HashMap<BitSet,Integer>();
+		for (int i=0; i<states.size(); i++) {
+			BitSet label = allowed.get(states.get(i));
+			if (labelmode == 'c' && !label.isEmpty()) {
+				int lowest = label.nextSetBit(0);
+				label = new BitSet();
+				label.set(lowest);
+			}
+			Integer c = known.get(label);
+			if (c == null) {
+				c = labels.size();
+				known.put(label, c);
+				labels.add(label);
+			}
+			classes[i] = c;
+		}
+	}
+
+}
@@ -0,0 +1,195 @@
+package machinelearning;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedList;
+
+/**
+ * Multi-class decision tree mapping states to the sets of allowed actions <br>
+ * Built by ID3 over an ActionDataset (atoms only, the multi-class entropy), <br>
+ * the leaves hold a label, so the tree is evaluated once per state.
+ * @author vtoman - Viktor Toman
+ * viktor.toman@ist.ac.at
+ *
+ */
+public class ActionTree implements Controller {
+
+	public Node root;
+	public int numberOfNodes;
+	public int numberOfInnerNodes;
+	public int heuristicFiredUp;
+	public ArrayList<String> attNames;
+	public ArrayList<BitSet> labels;
+
+	/**
+	 * Builds the tree, every leaf is pure (all its states have the same label)
+	 * @param data	Dataset from which the tree is built
+	 */
+	public ActionTree(ActionDataset data) {
+		assert(data.states.size() >= 1);
+		this.attNames = new ArrayList<String>(data.attributes);
+		this.labels = data.labels;
+		this.heuristicFiredUp = 0;
+
+		int[] all = new int[data.states.size()];
+		for (int i=0; i<all.length; i++)
+			all[i] = i;
+		root = new Node(null);
+		LinkedList<Node> queue = new LinkedList<Node>();
+		LinkedList<int[]> rows = new LinkedList<int[]>();
+		queue.add(root);
+		rows.add(all);
+
+		while (queue.size() > 0) {
+			Node current = queue.remove();
+			int[] subset = rows.remove();
+			current.label = majority(data, subset);
+			current.id = numberOfNodes++;
+
+			int attribute = bestAttribute(data, subset);
+			if (attribute == -1)
+				continue; // current is a leaf
+
+			numberOfInnerNodes++;
+			current.attribute = attribute;
+			int ones = 0;
+			for (int row : subset)
+				if (data.states.get(row).get(attribute))
+					ones++;
+			int[][] parts = {new int[subset.length - ones], new int[ones]};
+			int[] filled = new int[2];
+			for (int row : subset) {
+				int v = data.states.get(row).get(attribute)?1:0;
+				parts[v][filled[v]++] = row;
+			}
+			current.children = new ArrayList<Node>(2);
+			for (int v=0; v<2; v++) {
+				Node child = new Node(current);
+				current.children.add(child);
+				queue.add(child);
+				rows.add(parts[v]);
+			}
+		}
+	}
+
+	/**
+	 * @return The most frequent class of the given states
+	 */
+	private static int majority(ActionDataset data, int[] subset) {
+		int[] count = new int[data.labels.size()];
+		int best = data.classes[subset[0]];
+		for (int row : subset)
+			if (++count[data.classes[row]] > count[best])
+				best = data.classes[row];
+		return best;
+	}
+
+	/**
+	 * Chooses the attribute with the best information gain, <br>
+	 * if none gains anything, the attribute splitting the states most evenly
+	 * @return The attribute, or (-1) if the states are pure (or cannot be split)
+	 */
+	private int bestAttribute(ActionDataset data, int[] subset) {
+		int numAtt = attNames.size();
+		int numClasses = data.labels.size();
+		int[] total = new int[numClasses];
+		int[][] ones = new int[numAtt][numClasses];
+		int[] onesTOT = new int[numAtt];
+		for (int row : subset) {
+			int c = data.classes[row];
+			total[c]++;
+			ArrayList<Boolean> state = data.states.get(row);
+			for (int a=0; a<numAtt; a++)
+				if (state.get(a)) {
+					ones[a][c]++;
+					onesTOT[a]++;
+				}
+		}
+		if (total[data.classes[subset[0]]] == subset.length)
+			return -1; // pure
+
+		double original = entropy(total, subset.length);
+		double best = 0.001;
+		int bestpoz = -1;
+		int[] zeros = new int[numClasses];
+		for (int a=0; a<numAtt; a++) {
+			if (onesTOT[a] == 0 || onesTOT[a] == subset.length) continue;
+			for (int c=0; c<numClasses; c++)
+				zeros[c] = total[c] - ones[a][c];
+			double current = original
+					- ((double) onesTOT[a]) / subset.length * entropy(ones[a], onesTOT[a])
+					- ((double) (subset.length - onesTOT[a])) / subset.length * entropy(zeros, subset.length - onesTOT[a]);
+			if (current > best) {
+				best = current;
+				bestpoz = a;
+			}
+		}
+		if (bestpoz > -1)
+			return bestpoz;
+
+		// nothing gains, split as evenly as possible
+		heuristicFiredUp++;
+		int balance = 0;
+		for (int a=0; a<numAtt; a++) {
+			int smaller = Math.min(onesTOT[a], subset.length - onesTOT[a]);
+			if (smaller > balance) {
+				balance = smaller;
+				bestpoz = a;
+			}
+		}
+		return bestpoz; // (-1) if all the states are the same
+	}
+
+	private static double entropy(int[] count, int total) {
+		double h = 0;
+		for (int c : count)
+			if (c > 0) {
+				double p = ((double) c) / total;
+				h -= p * (Math.log(p) / Math.log(2));
+			}
+		return h;
+	}
+
+	/**
+	 * @param state	Values of the state attributes
+	 * @return		The actions allowed in the state
+	 */
+	public BitSet classify(ArrayList<Boolean> state) {
+		assert(state.size() == attNames.size());
+		Node current = root;
+		while (!current.isLeaf())
+			current = current.children.get(state.get(current.attribute)?1:0);
+		return labels.get(current.label);
+	}
+
+	public long[] sample() {
+		return new long[(attNames.size() + 63) >>> 6];
+	}
+
+	public long[] allowedActions(long[] bits, int from, int length) {
+		assert(from == attNames.size());
+		Node current = root;
+		while (!current.isLeaf())
+			current = current.children.get((int) ((bits[current.attribute >>> 6] >>> current.attribute) & 1L));
+		long[] result = new long[(length <= 6)?1:1 << (length - 6)];
+		long[] label = labels.get(current.label).toLongArray();
+		System.arraycopy(label, 0, result, 0, label.length);
+		return result;
+	}
+
+	static class Node {
+		int id;
+		int attribute; // (-1) for a leaf
+		int label;     // the most frequent class of the states of the node
+		ArrayList<Node> children;
+		Node parent;
+
+		private Node(Node parent) {
+			this.attribute = -1;
+			this.children = null;
+			this.parent = parent;
+		}
+
+		boolean isLeaf() { return (attribute == -1); }
+	}
+}
@@ -0,0 +1,258 @@
+package machinelearning;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streaming reader of the ARFF files written by Dataset.arffFile <br>
+ * The header (the "% KEY: value" comments and the attributes) is parsed when the reader is created, <br>
+ * the data rows are then decoded (four values per eight-byte word) straight into bit rows, <br>
+ * in the layout of the packed datasets: bit i (of word i/64) is attribute i, <br>
+ * the bit after the last attribute is the class (1 - yes, 0 - no).
+ * @author vtoman - Viktor Toman
+ * viktor.toman@ist.ac.at
+ *
+ */
+public class ArffReader implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final long VALUES = 0x0001000100010001L; // value bits of four "v," pairs read as one little-endian word
+	private static final long PAIRS = 0x2C302C302C302C30L;  // "0,0,0,0," read as one little-endian word
+
+	public final HashMap<String,String> header; // e.g. "STATES GENERATED" -> "35"
+	public String relation;
+	public final ArrayList<String> attributes;  // without the class attribute
+	public int rows;                            // data rows read so far
+
+	private final ReadableByteChannel channel;
+	private final ByteBuffer buffer;
+	private final byte[] bytes;
+	private final ByteBuffer words; // the bytes read eight at a time
+	private int position;
+	private int limit;
+
+	/**
+	 * Opens an ARFF file of the datasets directory and reads its header
+	 * @param filename		Read this ARFF file (results/datasets/filename.arff, or filename.arff.gz if there is only that <br>
+	 * 						or it is newer, so a stale plain file does not shadow a rewritten compressed one)
+	 * @return				The reader positioned at the first data row
+	 * @throws IOException	If the file cannot be read
+	 */
+	public static ArffReader open(String filename) throws IOException {
+		File gzip = new File("results/datasets/"+filename+".arff.gz");
+		File plain = new File("results/datasets/"+filename+".arff");
+		if (gzip.isFile() && (!plain.isFile() || gzip.lastModified() > plain.lastModified()))
+			return new ArffReader(Channels.newChannel(new GZIPInputStream(new FileInputStream(gzip), BUFFER_SIZE)));
+		return new ArffReader(FileChannel.open(Paths.get("results/datasets/"+filename+".arff")));
+	}
+
+	/**
+	 * Reads the header of an ARFF stream
+	 * @param channel		The stream, closed together with the reader
+	 * @throws IOException	If the stream cannot be read
+	 */
+	public ArffReader(ReadableByteChannel channel) throws IOException {
+		this.channel = channel;
+		this.bytes = new byte[BUFFER_SIZE];
+		this.buffer = ByteBuffer.wrap(bytes);
+		this.words = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		this.header = new HashMap<String,String>();
+		this.attributes = new ArrayList<String>();
+
+		boolean data = false;
+		while (!data) {
+			String line = line();
+			if (line == null)
+				throw new IOException("ARFF data section missing");
+			line = line.trim();
+			if (line.startsWith("%")) {
+				int colon = line.indexOf(':');
+				if (colon > -1)
+					header.put(line.substring(1, colon).trim(), line.substring(colon+1).trim());
+			} else if (line.startsWith("@RELATION")) {
+				relation = line.substring(9).trim();
+			} else if (line.startsWith("@ATTRIBUTE")) {
+				String rest = line.substring(10).trim();
+				int end = rest.startsWith("\"")?rest.indexOf('"', 1):rest.indexOf(' ');
+				String name = rest.substring(rest.startsWith("\"")?1:0, end);
+				String domain = rest.substring(end+1).trim();
+				if (name.equals("class"))
+					assert(domain.equals("{yes,no}"));
+				else {
+					assert(domain.equals("{0,1}"));
+					attributes.add(name);
+				}
+			} else if (line.startsWith("@DATA"))
+				data = true;
+		}
+	}
+
+	/**
+	 * @param key	Key of a header comment (the text before the colon)
+	 * @return		Its value, or null if the header has no such comment
+	 */
+	public String header(String key) {
+		return header.get(key);
+	}
+
+	/**
+	 * @param key	Key of a header comment with a number
+	 * @return		The number
+	 */
+	public int headerInt(String key) {
+		return Integer.parseInt(header.get(key));
+	}
+
+	/**
+	 * @return Number of words of one bit row (the attributes and the class bit)
+	 */
+	public int rowWords() {
+		return (attributes.size() + 64) >>> 6;
+	}
+
+	/**
+	 * Decodes the next data row
+	 * @param row			Overwritten by the bit row, at least rowWords() long
+	 * @return				False if there are no more rows
+	 * @throws IOException	If the stream cannot be read or the row is malformed
+	 */
+	public boolean next(long[] row) throws IOException {
+		int b = read();
+		while (b == '\n' || b == '\r' || b == ' ')
+			b = read();
+		if (b == -1)
+			return false;
+
+		for (int w=0; w<rowWords(); w++)
+			row[w] = 0;
+		int numAtt = attributes.size();
+		if (limit - position >= 2*numAtt + 3) // the whole row is in the buffer
+			return decode(row, position - 1);
+		for (int i=0; i<numAtt; i++) {
+			if (b == '1')
+				row[i >>> 6] |= 1L << i;
+			else if (b != '0')
+				throw new IOException("ARFF row "+rows+": attribute "+i+" is not 0/1");
+			if (read() != ',')
+				throw new IOException("ARFF row "+rows+": comma expected");
+			b = read();
+		}
+		if (b == 'y')
+			row[numAtt >>> 6] |= 1L << numAtt;
+		else if (b != 'n')
+			throw new IOException("ARFF row "+rows+": class is not yes/no");
+		// the rest of the line
+		while (b != '\n' && b != -1)
+			b = read();
+		rows++;
+		return true;
+	}
+
+	/**
+	 * Decodes a row lying in the buffer without checking for its end, <br>
+	 * four values at a time from one eight-byte word "v,v,v,v,"
+	 * @param row	Cleared bit row
+	 * @param p		Position of the first value of the row
+	 */
+	private boolean decode(long[] row, int p) throws IOException {
+		int numAtt = attributes.size();
+		int i = 0;
+		for (; i+4 <= numAtt; i+=4, p+=8) {
+			long x = words.getLong(p);
+			if ((x & ~VALUES) != PAIRS)
+				throw new IOException("ARFF row "+rows+": attributes "+i+" to "+(i+3)+" are not 0/1 separated by commas");
+			long v = x & VALUES;
+			row[i >>> 6] |= ((v | v >>> 15 | v >>> 30 | v >>> 45) & 0xF) << i; // i is a multiple of 4, no word is crossed
+		}
+		for (; i<numAtt; i++, p+=2) {
+			int b = bytes[p];
+			if (b == '1')
+				row[i >>> 6] |= 1L << i;
+			else if (b != '0')
+				throw new IOException("ARFF row "+rows+": attribute "+i+" is not 0/1");
+			if (bytes[p+1] != ',')
+				throw new IOException("ARFF row "+rows+": comma expected");
+		}
+		if (bytes[p] == 'y')
+			row[numAtt >>> 6] |= 1L << numAtt;
+		else if (bytes[p] != 'n')
+			throw new IOException("ARFF row "+rows+": class is not yes/no");
+		position = p + 1;
+		// the rest of the line
+		int b = read();
+		while (b != '\n' && b != -1)
+			b = read();
+		rows++;
+		return true;
+	}
+
+	/**
+	 * @param row	A bit row
+	 * @param i		An attribute (or the class bit)
+	 * @return		Its value in the row
+	 */
+	public static boolean bit(long[] row, int i) {
+		return ((row[i >>> 6] >>> i) & 1L) != 0;
+	}
+
+	/**
+	 * @param row		A bit row
+	 * @param from		Attribute of the lowest bit
+	 * @param length	Number of bits
+	 * @return			The number they represent (as in Util.decimal)
+	 */
+	public static int decimal(long[] row, int from, int length) {
+		int result = 0;
+		for (int i=0; i<length; i++)
+			if (bit(row, from + i))
+				result |= 1 << i;
+		return result;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private int read() throws IOException {
+		if (position == limit) {
+			buffer.clear();
+			int read = 0;
+			while (read == 0)
+				read = channel.read(buffer);
+			if (read == -1)
+				return -1;
+			position = 0;
+			limit = read;
+		}
+		return bytes[position++];
+	}
+
+	/**
+	 * @return The next line of the header, null at the end of the stream
+	 */
+	private String line() throws IOException {
+		StringBuilder result = new StringBuilder();
+		int b = read();
+		if (b == -1)
+			return null;
+		while (b != '\n' && b != -1) {
+			if (b != '\r')
+				result.append((char) b);
+			b = read();
+		}
+		return result.toString();
+	}
+
+}
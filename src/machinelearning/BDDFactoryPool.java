@@ -0,0 +1,102 @@
+package machinelearning;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import net.sf.javabdd.BDDFactory;
+import net.sf.javabdd.JFactory;
+
+/**
+ * Pool of the BDD factories used by the binary decision diagrams <br>
+ * A factory is sized from the dataset when it is created, and it is reused by the next BDD <br>
+ * over the same number of variables once the previous one is freed (see BinaryDecisionDiagram.free), <br>
+ * so its node table and cache are allocated and grown only once for all the attempts of an instance. <br>
+ * The idle factories hold at most IDLE_NODES nodes together, the least recently released ones are disposed of (done).
+ * @author vtoman - Viktor Toman
+ * viktor.toman@ist.ac.at
+ *
+ */
+final class BDDFactoryPool {
+
+	private static final int MIN_NODES = 1000;
+	private static final int MAX_INITIAL_NODES = 1 << 21; // a node takes 24 bytes, larger tables are grown on demand
+	private static final int CACHE_RATIO = 4;            // nodes per cache entry
+	private static final long IDLE_NODES = Runtime.getRuntime().maxMemory() / 256; // about a tenth of the heap
+
+	private static final LinkedList<BDDFactory> idle = new LinkedList<BDDFactory>(); // the most recently released first
+	private static long idlenodes = 0;
+
+	private BDDFactoryPool() {}
+
+	/**
+	 * A factory with the given number of variables, in the identity order and without live BDDs
+	 * @param varNum	Number of variables
+	 * @param nodes		Expected number of nodes
+	 * @return			The factory, it belongs to the caller until it is released
+	 */
+	static BDDFactory acquire(int varNum, long nodes) {
+		int size = (int) Math.max(MIN_NODES, Math.min(MAX_INITIAL_NODES, nodes));
+		BDDFactory result = null;
+		synchronized (idle) {
+			for (Iterator<BDDFactory> it = idle.iterator(); it.hasNext(); ) {
+				BDDFactory factory = it.next();
+				if (factory.varNum() == varNum) {
+					it.remove();
+					idlenodes -= factory.getNodeTableSize();
+					result = factory;
+					break;
+				}
+			}
+		}
+
+		if (result == null) {
+			// JFactory directly, BDDFactory.init would first try to load the native BuDDy and print that it failed
+			result = JFactory.init(size, Math.max(MIN_NODES, size / CACHE_RATIO));
+			result.setVarNum(varNum);
+		} else if (result.getNodeTableSize() < size) {
+			result.setNodeTableSize(size);
+			result.setCacheSize(Math.max(MIN_NODES, size / CACHE_RATIO));
+		}
+		return result;
+	}
+
+	/**
+	 * Gives a factory back to the pool, all its BDDs must have been freed
+	 * @param factory	The factory, it must not be used by the caller any more
+	 */
+	static void release(BDDFactory factory) {
+		// the dead nodes would be collected only when the table runs full (and the cache cleared then),
+		// a reset allocates the table anew at its grown size, with no nodes and an empty cache
+		int varNum = factory.varNum();
+		factory.reset();
+		factory.setVarNum(varNum);
+		
+		LinkedList<BDDFactory> disposed = new LinkedList<BDDFactory>();
+		synchronized (idle) {
+			idle.addFirst(factory);
+			idlenodes += factory.getNodeTableSize();
+			while (idlenodes > IDLE_NODES && !idle.isEmpty()) {
+				BDDFactory oldest = idle.removeLast();
+				idlenodes -= oldest.getNodeTableSize();
+				disposed.add(oldest);
+			}
+		}
+		for (BDDFactory oldest : disposed)
+			oldest.done();
+	}
+
+	/**
+	 * Disposes of all the idle factories
+	 */
+	static void clear() {
+		LinkedList<BDDFactory> disposed;
+		synchronized (idle) {
+			disposed = new LinkedList<BDDFactory>(idle);
+			idle.clear();
+			idlenodes = 0;
+		}
+		for (BDDFactory factory : disposed)
+			factory.done();
+	}
+
+}
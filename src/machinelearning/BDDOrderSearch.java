@@ -0,0 +1,75 @@
+package machinelearning;
+
+import java.util.ArrayList;
+
+/**
+ * Search for a small BDD of a dataset over random variable orders <br>
+ * Every attempt shuffles the order with its own seed and builds the BDD in its own factory (see BDDFactoryPool), <br>
+ * so the attempts run in parallel and the results depend only on the seeds, not on the scheduling.
+ * @author vtoman - Viktor Toman
+ * viktor.toman@ist.ac.at
+ *
+ */
+public class BDDOrderSearch {
+
+	public final int[] seeds;
+	public final int[] sizes;         // inner nodes of the BDD of every attempt
+	public int min;
+	public int max;
+	public double mean;
+	public int bestSeed;              // seed of the first attempt with the fewest nodes
+	public double time;               // seconds of all the attempts together (as if made one after another)
+	public ArrayList<Integer> bestOrder; // its variable (level) of every attribute
+
+	/**
+	 * Builds one BDD per seed, each in the variable order shuffled by the seed
+	 * @param dataset	The given dataset
+	 * @param seeds		Seed of every attempt
+	 * @param parallel	Run the attempts over the fork/join pool?
+	 */
+	public BDDOrderSearch(final Dataset dataset, int[] seeds, boolean parallel) {
+		assert(seeds.length >= 1);
+		this.seeds = seeds.clone();
+		this.sizes = new int[seeds.length];
+		final long[] times = new long[seeds.length];
+		final ArrayList<ArrayList<Integer>> orders = new ArrayList<ArrayList<Integer>>(seeds.length);
+		for (int i=0; i<seeds.length; i++)
+			orders.add(null);
+		// once, the attempts only read the rows (the instances of a memory-mapped dataset are not loaded)
+		final long[] rows = BinaryDecisionDiagram.yesRows(dataset);
+		final int numAtt = dataset.attributes.size();
+
+		ParallelFor.run(0, seeds.length, parallel, new ParallelFor.Body() {
+			@Override
+			public void step(int i) {
+				long start = System.nanoTime();
+				BinaryDecisionDiagram bdd = new BinaryDecisionDiagram(rows, numAtt,
+						BinaryDecisionDiagram.order(numAtt, true, BDDOrderSearch.this.seeds[i]));
+				sizes[i] = bdd.numberOfInnerNodes();
+				orders.set(i, bdd.order);
+				bdd.free();
+				times[i] = System.nanoTime() - start;
+			}
+		});
+
+		// summed up in the order of the attempts
+		int best = 0;
+		min = sizes[0];
+		max = sizes[0];
+		mean = 0;
+		time = 0;
+		for (int i=0; i<sizes.length; i++) {
+			if (sizes[i] < min) {
+				min = sizes[i];
+				best = i;
+			}
+			max = Math.max(max, sizes[i]);
+			mean += sizes[i];
+			time += times[i] / 1000000000.0;
+		}
+		mean /= sizes.length;
+		bestSeed = this.seeds[best];
+		bestOrder = orders.get(best);
+	}
+
+}
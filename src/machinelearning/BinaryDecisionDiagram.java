@@ -4,10 +4,10 @@ import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileWriter;
-import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Random;
 
 import net.sf.javabdd.BDD;
@@ -22,28 +22,47 @@ public class BinaryDecisionDiagram {
 	
 	private BDDFactory B;
 	public BDD root;
+	public ArrayList<Integer> order; // variable (level) of every attribute
 	
 	/**
-	 * Constructor which creates a binary decision diagram from a given dataset
+	 * Constructor which creates a binary decision diagram from a given dataset <br>
+	 * by recursive Shannon splitting of its YES instances
 	 * @param dataset The given dataset
 	 * @param reorder Reorder the variables?
 	 * @param seed	  Seed used for reorder
 	 */
 	public BinaryDecisionDiagram(Dataset dataset, boolean reorder, int seed) {
+		this(dataset, reorder, seed, 's');
+	}
+
+	/**
+	 * Constructor which creates a binary decision diagram from a given dataset, <br>
+	 * the BDD represents the set of the YES instances (the same BDD in every build mode)
+	 * @param dataset	The given dataset
+	 * @param reorder	Reorder the variables?
+	 * @param seed		Seed used for reorder
+	 * @param buildmode	'c'hain - one cube per YES instance ORed into the result one by one, <br>
+	 * 					'o'r - the cubes ORed in a balanced tree, <br>
+	 * 					's'hannon - the YES instances partitioned by the variables top down, the nodes made bottom up
+	 */
+	public BinaryDecisionDiagram(Dataset dataset, boolean reorder, int seed, char buildmode) {
 		assert(dataset.attributes.size() >= 1);
-		assert(dataset.instances.size() >= 1);
+		assert(buildmode == 'c' || buildmode == 'o' || buildmode == 's');
 		
-		PrintStream old = System.out;
-	    System.setOut(new PrintStream(new OutputStream() {
-            public void write(int b) { // Could not load BDD package buddy: Could not initialize class net.sf.javabdd.BuDDyFactory
-            	}}));
-		B = BDDFactory.init(1000, 1000);
-		B.setVarNum(dataset.attributes.size());
-		System.setOut(old);
+		order = order(dataset.attributes.size(), reorder, seed);
 		
-		ArrayList<Integer> order = new ArrayList<Integer>(dataset.attributes.size());
-		for(int i=0; i<dataset.attributes.size(); i++) order.add(i);
-		if (reorder) Collections.shuffle(order, new Random(seed));
+		if (buildmode == 's') {
+			// the rows are read without loading the instances (of a memory-mapped dataset)
+			long[] rows = yesRows(dataset);
+			B = acquire(rows, dataset.attributes.size());
+			root = shannon(rows, dataset.attributes.size(), order);
+			return;
+		}
+		
+		dataset.load();
+		assert(dataset.instances.size() >= 1);
+		// the BDD has at most a node per YES instance and variable
+		B = BDDFactoryPool.acquire(dataset.attributes.size(), (long) dataset.numYES * dataset.attributes.size() + dataset.attributes.size() + 2);
 		
 		BDD[] v = new BDD[dataset.attributes.size()];
 		BDD[] nv = new BDD[dataset.attributes.size()];
@@ -58,18 +77,185 @@ public class BinaryDecisionDiagram {
 			if (dataset.instances.get(i).classValue) {
 				Instance sample = dataset.instances.get(i);
 				if (!sample.attValues.get(0))
-					result[k] = nv[0]; else result[k] = v[0];
+					result[k] = nv[0].id(); else result[k] = v[0].id(); // copies, the cubes are freed when ORed
 				for (int j=1; j<dataset.attributes.size(); j++)
 					if (!sample.attValues.get(j))
 						result[k] = result[k].and(nv[j]);
 					else result[k] = result[k].and(v[j]);
-				if (k > 0) result[k] = result[k].or(result[k-1]);
+				if (k > 0 && buildmode == 'c') result[k] = result[k].or(result[k-1]);
 				k++;
 			}
 		
-		root = result[k-1];
-		//B.done();
-	}	
+		if (k == 0)
+			root = B.zero();
+		else if (buildmode == 'c')
+			root = result[k-1];
+		else {
+			// pairs of neighbours merged until one BDD is left
+			for (int width=k; width>1; width=(width+1)/2)
+				for (int j=0; 2*j<width; j++)
+					if (2*j+1 < width) {
+						BDD merged = result[2*j].or(result[2*j+1]);
+						result[2*j].free();
+						result[2*j+1].free();
+						result[j] = merged;
+					} else
+						result[j] = result[2*j];
+			root = result[0];
+		}
+		for (int i=0; i<dataset.attributes.size(); i++) {
+			v[i].free();
+			nv[i].free();
+		}
+	}
+	
+	/**
+	 * Constructor which creates a binary decision diagram from a given dataset in a given variable order <br>
+	 * (e.g. the best order of a BDDOrderSearch, or the order of a sifted BDD)
+	 * @param dataset	The given dataset
+	 * @param order		Variable (level) of every attribute
+	 */
+	public BinaryDecisionDiagram(Dataset dataset, ArrayList<Integer> order) {
+		this(yesRows(dataset), dataset.attributes.size(), order);
+	}
+	
+	/**
+	 * Constructor which creates a binary decision diagram from the YES rows of a dataset in a given variable order
+	 * @param rows		Bit rows of the YES instances (see yesRows), they are not changed
+	 * @param numAtt	Number of attributes
+	 * @param order		Variable (level) of every attribute
+	 */
+	BinaryDecisionDiagram(long[] rows, int numAtt, ArrayList<Integer> order) {
+		assert(order.size() == numAtt);
+		B = acquire(rows, numAtt);
+		this.order = new ArrayList<Integer>(order);
+		root = shannon(rows, numAtt, this.order);
+	}
+	
+	/**
+	 * Constructor which creates a binary decision diagram from a given dataset <br>
+	 * in the variable order found by sifting (see Sifting) from the order of the attributes
+	 * @param dataset	The given dataset
+	 * @param budget	Time budget of the construction in seconds
+	 */
+	public BinaryDecisionDiagram(Dataset dataset, double budget) {
+		assert(dataset.attributes.size() >= 1);
+		long[] rows = yesRows(dataset);
+		Sifting sifting = new Sifting(rows, dataset.attributes.size(), budget);
+		sifting.run();
+		B = BDDFactoryPool.acquire(dataset.attributes.size(), sifting.size + 2);
+		order = new ArrayList<Integer>(dataset.attributes.size());
+		for (int i=0; i<dataset.attributes.size(); i++)
+			order.add(sifting.var2level[i]);
+		root = shannon(rows, dataset.attributes.size(), order);
+		assert(root.nodeCount() == sifting.size);
+	}
+	
+	/**
+	 * Builds the BDD of the YES instances by Shannon expansion, <br>
+	 * every (non-empty) block of instances agreeing on the variables above a level becomes one node, <br>
+	 * made by ite of its variable on its two sub-blocks (the unique table of the factory shares the nodes)
+	 * @param rows		Bit rows of the YES instances
+	 * @param numAtt	Number of attributes
+	 * @param order		Variable of every attribute
+	 * @return			The BDD of the rows
+	 */
+	private BDD shannon(long[] rows, int numAtt, ArrayList<Integer> order) {
+		int rowWords = (numAtt + 63) >>> 6;
+		int[] attributeAt = new int[numAtt]; // attribute of every variable (level)
+		for (int i=0; i<numAtt; i++)
+			attributeAt[order.get(i)] = i;
+		int yes = rows.length / rowWords;
+		int[] index = new int[yes];
+		for (int r=0; r<yes; r++)
+			index[r] = r;
+		return shannon(rows, rowWords, index, 0, yes, 0, attributeAt);
+	}
+	
+	/**
+	 * @param numAtt	Number of attributes
+	 * @param reorder	Shuffle the order?
+	 * @param seed		Seed of the shuffle
+	 * @return			Variable (level) of every attribute
+	 */
+	static ArrayList<Integer> order(int numAtt, boolean reorder, int seed) {
+		ArrayList<Integer> order = new ArrayList<Integer>(numAtt);
+		for(int i=0; i<numAtt; i++) order.add(i);
+		if (reorder) Collections.shuffle(order, new Random(seed));
+		return order;
+	}
+	
+	/**
+	 * @param rows		Bit rows of the YES instances
+	 * @param numAtt	Number of attributes
+	 * @return			A factory for their BDD, it has at most a node per YES instance and variable
+	 */
+	private static BDDFactory acquire(long[] rows, int numAtt) {
+		int rowWords = (numAtt + 63) >>> 6;
+		return BDDFactoryPool.acquire(numAtt, (long) (rows.length / rowWords) * numAtt + numAtt + 2);
+	}
+	
+	/**
+	 * @param dataset	The given dataset
+	 * @return			Its YES instances packed into bit rows, (numAtt+63)/64 words each <br>
+	 * 					(read from the file of a memory-mapped dataset, its instances are not loaded)
+	 */
+	static long[] yesRows(Dataset dataset) {
+		int numAtt = dataset.attributes.size();
+		int rowWords = (numAtt + 63) >>> 6;
+		int datasetWords = (numAtt + 64) >>> 6; // with the class bit
+		long[] rows = dataset.rows(true);
+		int yes = rows.length / datasetWords;
+		if (rowWords == datasetWords) {
+			for (int k=0; k<yes; k++)
+				rows[k*rowWords + (numAtt >>> 6)] &= ~(1L << numAtt);
+			return rows;
+		}
+		long[] result = new long[yes*rowWords];
+		for (int k=0; k<yes; k++)
+			System.arraycopy(rows, k*datasetWords, result, k*rowWords, rowWords);
+		return result;
+	}
+	
+	/**
+	 * @param rows			Bit rows of the YES instances
+	 * @param rowWords		Words of one row
+	 * @param index			Rows of the blocks, a block is partitioned in place
+	 * @param from			First position of the block in index
+	 * @param to			One past its last position
+	 * @param level			Level (variable) of the node
+	 * @param attributeAt	Attribute of every level
+	 * @return				The BDD of the rows of the block (restricted to the levels from level on)
+	 */
+	private BDD shannon(long[] rows, int rowWords, int[] index, int from, int to, int level, int[] attributeAt) {
+		if (from == to)
+			return B.zero();
+		if (level == attributeAt.length)
+			return B.one();
+		
+		// the rows with 0 at the level to the front, those with 1 to the back
+		int word = attributeAt[level] >>> 6;
+		long bit = 1L << attributeAt[level];
+		int split = from;
+		int back = to;
+		while (split < back) {
+			if ((rows[index[split]*rowWords + word] & bit) == 0)
+				split++;
+			else {
+				back--;
+				int help = index[split]; index[split] = index[back]; index[back] = help;
+			}
+		}
+		
+		BDD low = shannon(rows, rowWords, index, from, split, level+1, attributeAt);
+		BDD high = shannon(rows, rowWords, index, split, to, level+1, attributeAt);
+		BDD variable = B.ithVar(level);
+		BDD result = variable.ite(high, low);
+		variable.free();
+		high.free();
+		low.free();
+		return result;
+	}
 	
 	/**
 	 * Creates a dot file with the string representation of the BDD <br>
@@ -79,11 +265,8 @@ public class BinaryDecisionDiagram {
 	public void dotFile(String filename) {
 	    ByteArrayOutputStream baos = new ByteArrayOutputStream();
 	    PrintStream ps = new PrintStream(baos);
-	    PrintStream old = System.out;
-	    System.setOut(ps);
-	    root.printDot();
-	    System.out.flush();
-	    System.setOut(old);
+	    printDot(ps);
+	    ps.flush();
 		
 	    String dot = baos.toString();
 	    
@@ -97,6 +280,81 @@ public class BinaryDecisionDiagram {
         }
 	}
 	
+	/**
+	 * Prints the BDD in the format of BDD.printDot, into the given stream instead of System.out <br>
+	 * (System.out is not redirected, the dot files are written on a background thread)
+	 * @param out The stream
+	 */
+	private void printDot(PrintStream out) {
+		out.println("digraph G {");
+		out.println("0 [shape=box, label=\"0\", style=filled, shape=box, height=0.3, width=0.3];");
+		out.println("1 [shape=box, label=\"1\", style=filled, shape=box, height=0.3, width=0.3];");
+		boolean[] visited = new boolean[root.nodeCount()+2];
+		visited[0] = true;
+		visited[1] = true;
+		HashMap<BDD,Integer> map = new HashMap<BDD,Integer>();
+		map.put(B.zero(), 0);
+		map.put(B.one(), 1);
+		printDot(root, out, 1, visited, map);
+		for (BDD node : map.keySet())
+			node.free();
+		out.println("}");
+	}
+	
+	/**
+	 * @param node		The node printed with the nodes below it
+	 * @param out		The stream
+	 * @param current	The last number given to a node
+	 * @param visited	Numbers of the nodes already printed
+	 * @param map		Number of every node met so far
+	 * @return			The last number given to a node
+	 */
+	private static int printDot(BDD node, PrintStream out, int current, boolean[] visited, HashMap<BDD,Integer> map) {
+		Integer number = map.get(node);
+		if (number == null)
+			map.put(node.id(), number = ++current);
+		if (visited[number])
+			return current;
+		visited[number] = true;
+		
+		out.println(number+" [label=\""+node.var()+"\"];");
+		BDD low = node.low();
+		BDD high = node.high();
+		Integer numberLow = map.get(low);
+		if (numberLow == null)
+			map.put(low.id(), numberLow = ++current);
+		Integer numberHigh = map.get(high);
+		if (numberHigh == null)
+			map.put(high.id(), numberHigh = ++current);
+		out.println(number+" -> "+numberLow+" [style=dotted];");
+		out.println(number+" -> "+numberHigh+" [style=filled];");
+		current = printDot(low, out, current, visited, map);
+		low.free();
+		current = printDot(high, out, current, visited, map);
+		high.free();
+		return current;
+	}
+	
 	public int numberOfInnerNodes() { return root.nodeCount(); }
 	
+	/**
+	 * Frees the BDD and gives its factory back to the pool, for the next BDD over as many variables <br>
+	 * The BDD must not be used any more
+	 */
+	public void free() {
+		if (root == null)
+			return;
+		root.free();
+		root = null;
+		BDDFactoryPool.release(B);
+		B = null;
+	}
+	
+	/**
+	 * Disposes of the factories kept for the next BDDs, the BDDs not freed yet keep theirs
+	 */
+	public static void disposeFactories() {
+		BDDFactoryPool.clear();
+	}
+	
 }
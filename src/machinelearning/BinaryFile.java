@@ -0,0 +1,257 @@
+package machinelearning;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import model.Game;
+
+/**
+ * Binary dataset file, the compact twin of the ARFF file of a dataset <br>
+ * Location: results/datasets/filename.bds, all numbers little-endian: <br>
+ * MAGIC, VERSION, the header numbers (in the order of HEADER), the number of attributes, <br>
+ * the file name and the attribute names (each an int length and UTF-8 bytes), <br>
+ * zero padding to a multiple of 8 bytes and NUMTOT rows of (attributes + 1) bits each, <br>
+ * the rows follow each other without gaps in a stream of longs (bit i of a row in the layout of the packed datasets). <br>
+ * The header keys are those of the ARFF comments, so both files are read the same way. <br>
+ * The file stays mapped, its rows are read all at once or one by one as they are needed.
+ * @author vtoman - Viktor Toman
+ * viktor.toman@ist.ac.at
+ *
+ */
+public class BinaryFile {
+
+	public static final String EXTENSION = ".bds";
+
+	private static final int MAGIC = 0x53544447; // "GDTS"
+	private static final int VERSION = 1;
+	private static final String[] HEADER = {"STATES ESTIMATED", "STATES GENERATED", "STATEVARP1", "STATEVARP2",
+			"ACTIONVARP1", "ACTIONVARP2", "PLAYER", "OBJECTIVE", "NUMYES", "NUMNO", "NUMTOT"};
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final long MAP_SIZE = 1L << 30; // the rows are mapped in chunks of at most this many bytes
+
+	public final HashMap<String,String> header; // e.g. "STATES GENERATED" -> "35"
+	public final ArrayList<String> attributes;  // without the class attribute
+	public final int samples;                   // number of the rows
+
+	private final LongBuffer[] chunks; // the mapped stream of the rows, chunk c holds words [c*CHUNK_WORDS, (c+1)*CHUNK_WORDS)
+	private final int rowBits;
+
+	private static final long CHUNK_WORDS = MAP_SIZE >>> 3;
+
+	/**
+	 * @param filename	Name of the dataset
+	 * @return			Does the dataset have a binary file, at least as new as its ARFF files? <br>
+	 * 					(an ARFF file rewritten without its binary file makes the binary file stale)
+	 */
+	public static boolean exists(String filename) {
+		File file = new File("results/datasets/"+filename+EXTENSION);
+		if (!file.isFile())
+			return false;
+		for (String extension : new String[] {".arff", ".arff.gz"}) {
+			File arff = new File("results/datasets/"+filename+extension);
+			if (arff.isFile() && arff.lastModified() > file.lastModified())
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Maps a binary file into memory and reads its header, <br>
+	 * the rows stay in the file until they are asked for
+	 * @param filename		Read this binary file (results/datasets/filename.bds)
+	 * @throws IOException	If the file cannot be read or is not a binary dataset file
+	 */
+	public BinaryFile(String filename) throws IOException {
+		this.header = new HashMap<String,String>();
+		this.attributes = new ArrayList<String>();
+
+		try (FileChannel channel = FileChannel.open(Paths.get("results/datasets/"+filename+EXTENSION))) {
+			long size = channel.size();
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, MAP_SIZE));
+			map.order(ByteOrder.LITTLE_ENDIAN);
+			if (map.getInt() != MAGIC || map.getInt() != VERSION)
+				throw new IOException("Not a binary dataset file: "+filename+EXTENSION);
+			for (String key : HEADER) {
+				int value = map.getInt();
+				header.put(key, key.equals("OBJECTIVE")?String.valueOf((char) value):String.valueOf(value));
+			}
+			int numAtt = map.getInt();
+			header.put("FILE", string(map));
+			for (int i=0; i<numAtt; i++)
+				attributes.add(string(map));
+
+			long offset = (map.position() + 7) & ~7L;
+			this.rowBits = numAtt + 1;
+			this.samples = Integer.parseInt(header.get("NUMTOT"));
+			long words = (((long) samples)*rowBits + 63) >>> 6;
+			if (offset + 8L*words != size)
+				throw new IOException("Binary dataset file "+filename+EXTENSION+" has a wrong size");
+
+			// the mapping stays valid after the channel is closed
+			this.chunks = new LongBuffer[(int) ((words + CHUNK_WORDS - 1) / CHUNK_WORDS)];
+			for (int c=0; c<chunks.length; c++) {
+				long length = Math.min(words - c*CHUNK_WORDS, CHUNK_WORDS);
+				chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, offset + 8L*c*CHUNK_WORDS, 8L*length)
+						.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+			}
+		}
+	}
+
+	/**
+	 * @return Number of words of one row (the attributes and the class bit)
+	 */
+	public int rowWords() {
+		return (rowBits + 63) >>> 6;
+	}
+
+	/**
+	 * Reads one row out of the mapped file
+	 * @param r		The row
+	 * @param row	Overwritten by the row in the layout of the packed datasets, at least rowWords() long
+	 * @return		The row
+	 */
+	public long[] row(int r, long[] row) {
+		long position = ((long) r)*rowBits;
+		for (int w=0; w<rowWords(); w++) {
+			int length = Math.min(64, rowBits - 64*w);
+			row[w] = bits(position, length);
+			position += length;
+		}
+		return row;
+	}
+
+	/**
+	 * Reads all the rows out of the mapped file
+	 * @return	The rows in the layout of the packed datasets, each of rowWords() words
+	 */
+	public long[] rows() {
+		int rowWords = rowWords();
+		long[] result = new long[samples*rowWords];
+		long[] row = new long[rowWords];
+		for (int r=0; r<samples; r++)
+			System.arraycopy(row(r, row), 0, result, r*rowWords, rowWords);
+		return result;
+	}
+
+	/**
+	 * Writes the binary file of a dataset, it holds the same rows as its ARFF file <br>
+	 * (an instance of weight w is written w times)
+	 * @param data		The dataset
+	 * @param filename	Name of the file (results/datasets/filename.bds)
+	 * @param game		Game instance
+	 * @param estimate	Estimate size of state space
+	 */
+	static void write(Dataset data, String filename, Game game, int estimate) {
+		data.load();
+		File directory = new File("results/datasets/");
+		if (!directory.exists())
+			directory.mkdirs();
+		int[] values = {estimate, game.stateSize, game.varStateP1no(), game.varStateP2no(),
+				game.varActionP1no(), game.varActionP2no(), data.player, data.objective,
+				data.numYES, data.numNO, data.numNO + data.numYES};
+
+		try (FileChannel channel = FileChannel.open(Paths.get("results/datasets/"+filename+EXTENSION),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ArrayList<byte[]> strings = new ArrayList<byte[]>();
+			strings.add(filename.getBytes(StandardCharsets.UTF_8));
+			for (String attribute : data.attributes)
+				strings.add(attribute.getBytes(StandardCharsets.UTF_8));
+			int headerSize = 4*(3 + values.length);
+			for (byte[] string : strings)
+				headerSize += 4 + string.length;
+			headerSize = (headerSize + 7) & ~7;
+
+			ByteBuffer buffer = ByteBuffer.allocate(Math.max(headerSize, BUFFER_SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			for (int value : values)
+				buffer.putInt(value);
+			buffer.putInt(data.attributes.size());
+			for (byte[] string : strings) {
+				buffer.putInt(string.length);
+				buffer.put(string);
+			}
+			while (buffer.position() < headerSize)
+				buffer.put((byte) 0);
+
+			int numAtt = data.attributes.size();
+			int rowWords = (numAtt + 64) >>> 6;
+			long[] row = new long[rowWords];
+			long word = 0; // bits not yet written
+			int filled = 0;
+			for (Instance instance : data.instances) {
+				for (int w=0; w<rowWords; w++)
+					row[w] = 0;
+				for (int i=0; i<numAtt; i++)
+					if (instance.attValues.get(i))
+						row[i >>> 6] |= 1L << i;
+				if (instance.classValue)
+					row[numAtt >>> 6] |= 1L << numAtt;
+				for (int copy=0; copy<instance.weight; copy++)
+					for (int w=0; w<rowWords; w++) {
+						int length = Math.min(64, numAtt + 1 - 64*w);
+						word |= row[w] << filled;
+						if (filled + length >= 64) {
+							if (buffer.remaining() < 8)
+								flush(channel, buffer);
+							buffer.putLong(word);
+							word = (filled == 0)?0:row[w] >>> (64 - filled);
+							filled += length - 64;
+						} else
+							filled += length;
+					}
+			}
+			if (filled > 0) {
+				if (buffer.remaining() < 8)
+					flush(channel, buffer);
+				buffer.putLong(word);
+			}
+			flush(channel, buffer);
+		} catch (IOException e) {
+			System.out.println("Exception when writing the binary dataset file "+filename+EXTENSION);
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @param position	Position of the lowest bit in the stream of the rows
+	 * @param length	Number of bits (1..64)
+	 * @return			The bits
+	 */
+	private long bits(long position, int length) {
+		long word = position >>> 6;
+		int shift = (int) (position & 63);
+		long result = word(word) >>> shift;
+		if (shift + length > 64)
+			result |= word(word + 1) << (64 - shift);
+		return (length == 64)?result:result & ((1L << length) - 1);
+	}
+
+	private long word(long index) {
+		return chunks[(int) (index / CHUNK_WORDS)].get((int) (index % CHUNK_WORDS));
+	}
+
+	private static String string(ByteBuffer map) {
+		byte[] bytes = new byte[map.getInt()];
+		map.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+}
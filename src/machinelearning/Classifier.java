@@ -0,0 +1,23 @@
+package machinelearning;
+
+/**
+ * Classifies bitvector samples, bit i of a sample is the value of attribute i
+ * @author vtoman - Viktor Toman
+ * viktor.toman@ist.ac.at
+ *
+ */
+public interface Classifier {
+
+	/**
+	 * @param bits	The sample of at most 64 attributes
+	 * @return		TRUE - yes, FALSE - no
+	 */
+	boolean classify(long bits);
+
+	/**
+	 * @param bits	The sample, bit i (of word i/64) is the value of attribute i
+	 * @return		TRUE - yes, FALSE - no
+	 */
+	boolean classify(long[] bits);
+
+}
@@ -0,0 +1,421 @@
+package machinelearning;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates the bytecode of a class classifying like a given compiled tree <br>
+ * The class implements Classifier, every inner node is a chain of bit tests <br>
+ * (one per literal of its disjunction) followed by the code of its two children. <br>
+ * Subtrees are moved into their own static methods to keep every method small <br>
+ * enough for the JIT, and so are the parts of a disjunction too long for one method. <br>
+ * The class file has version 49 (no stack map frames needed) <br>
+ * and is defined by its own class loader, so it is unloaded with the classifier.
+ * @author vtoman - Viktor Toman
+ * viktor.toman@ist.ac.at
+ *
+ */
+final class ClassifierGenerator {
+
+	/** Largest code (in bytes) of one generated method, the JIT skips methods above 8000 */
+	private static final int METHOD_LIMIT = 4000;
+
+	private static final int LITERAL_SIZE = 10; // lload_0 ldc2_w land lconst_0 lcmp if<cond>
+	private static final int LEAF_SIZE = 2;     // iconst ireturn
+	private static final int CALL_SIZE = 5;     // lload_0 invokestatic ireturn
+	private static final int TESTS_SIZE = 7;    // lload_0 invokestatic ifne
+	/** Literals tested by one method, a longer disjunction calls methods testing its parts */
+	private static final int TESTS_LIMIT = (METHOD_LIMIT - 2*LEAF_SIZE) / LITERAL_SIZE;
+
+	private static final AtomicInteger classes = new AtomicInteger(0);
+
+	private final CompiledTree tree;
+	private final boolean[] separate; // inner node k has its own method
+	private final HashMap<String,Integer> pool;
+	private final ByteArrayOutputStream poolBytes;
+	private final DataOutputStream poolOut;
+	private int poolSize;
+
+	private ClassifierGenerator(CompiledTree tree) {
+		this.tree = tree;
+		this.separate = new boolean[tree.numberOfInnerNodes()];
+		this.pool = new HashMap<String,Integer>();
+		this.poolBytes = new ByteArrayOutputStream();
+		this.poolOut = new DataOutputStream(poolBytes);
+		this.poolSize = 1;
+	}
+
+	/**
+	 * @param tree	The compiled tree
+	 * @return		Instance of the generated class, or null if the tree cannot be generated
+	 */
+	static Classifier generate(CompiledTree tree) {
+		if (tree.numberOfAttributes > 64)
+			return null;
+		try {
+			ClassifierGenerator generator = new ClassifierGenerator(tree);
+			String name = "machinelearning/generated/Tree" + classes.incrementAndGet();
+			byte[] bytes = generator.classFile(name);
+			if (bytes == null)
+				return null;
+			Class<?> generated = new Loader(Classifier.class.getClassLoader()).define(name.replace('/', '.'), bytes);
+			return (Classifier) generated.getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			System.out.println("Exception when generating the classifier class.");
+			e.printStackTrace();
+			return null;
+		} catch (LinkageError e) {
+			System.out.println("Exception when generating the classifier class.");
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Decides which inner nodes get their own method, children are processed before parents <br>
+	 * (they come later in the breadth-first numbering)
+	 */
+	private void partition() {
+		int inner = tree.numberOfInnerNodes();
+		int[] size = new int[inner];
+		for (int k=inner-1; k>=0; k--) {
+			int[] cost = new int[2];
+			for (int c=0; c<2; c++) {
+				int child = tree.next[2*k+c];
+				cost[c] = (child < 0)?LEAF_SIZE:size[child];
+			}
+			size[k] = tests(k) + cost[0] + cost[1];
+			// the larger children move out first
+			while (size[k] > METHOD_LIMIT) {
+				int c = (cost[0] >= cost[1])?0:1;
+				if (!movable(tree.next[2*k+c]))
+					c = 1 - c;
+				int child = tree.next[2*k+c];
+				if (!movable(child)) break;
+				separate[child] = true;
+				size[k] += CALL_SIZE - cost[c];
+				cost[c] = CALL_SIZE;
+			}
+		}
+		if (tree.root >= 0)
+			separate[tree.root] = true;
+	}
+
+	private boolean movable(int child) {
+		return child >= 0 && !separate[child];
+	}
+
+	/**
+	 * @param k	An inner node
+	 * @return	Code size of the tests of its disjunction
+	 */
+	private int tests(int k) {
+		int literals = tree.start[k+1] - tree.start[k];
+		if (literals <= TESTS_LIMIT)
+			return LITERAL_SIZE * literals;
+		return TESTS_SIZE * ((literals + TESTS_LIMIT - 1) / TESTS_LIMIT);
+	}
+
+	/**
+	 * @param name	Internal name of the class
+	 * @return		The class file, or null if it is too large
+	 */
+	private byte[] classFile(String name) throws IOException {
+		partition();
+
+		int thisClass = classRef(name);
+		int superClass = classRef("java/lang/Object");
+		int iface = classRef("machinelearning/Classifier");
+		int code = utf8("Code");
+
+		ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+		DataOutputStream methods = new DataOutputStream(methodBytes);
+		int methodCount = 0;
+
+		// public <init>()V
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		body.write(0x2a); // aload_0
+		body.write(0xb7); // invokespecial Object.<init>
+		writeShort(body, methodRef("java/lang/Object", "<init>", "()V"));
+		body.write(0xb1); // return
+		method(methods, 0x0001, "<init>", "()V", 1, 1, body.toByteArray(), code);
+		methodCount++;
+
+		// public classify(J)Z
+		body = new ByteArrayOutputStream();
+		if (tree.root < 0) {
+			body.write((tree.root == CompiledTree.LEAF_YES)?0x04:0x03); // iconst_1 / iconst_0
+		} else {
+			body.write(0x1f); // lload_1
+			body.write(0xb8); // invokestatic
+			writeShort(body, methodRef(name, "node" + tree.root, "(J)Z"));
+		}
+		body.write(0xac); // ireturn
+		method(methods, 0x0001, "classify", "(J)Z", 2, 3, body.toByteArray(), code);
+		methodCount++;
+
+		// public classify([J)Z, all the attributes are in the first word
+		body = new ByteArrayOutputStream();
+		body.write(0x2a); // aload_0
+		body.write(0x2b); // aload_1
+		body.write(0x03); // iconst_0
+		body.write(0x2f); // laload
+		body.write(0xb6); // invokevirtual
+		writeShort(body, methodRef(name, "classify", "(J)Z"));
+		body.write(0xac); // ireturn
+		method(methods, 0x0001, "classify", "([J)Z", 4, 2, body.toByteArray(), code);
+		methodCount++;
+
+		// private static node<k>(J)Z for the separate subtrees
+		for (int k=0; k<separate.length; k++)
+			if (separate[k]) {
+				body = new ByteArrayOutputStream();
+				ArrayList<int[]> jumps = new ArrayList<int[]>();
+				node(body, jumps, k, name);
+				method(methods, 0x0002 | 0x0008, "node" + k, "(J)Z", 4, 2, patch(body, jumps), code);
+				methodCount++;
+				if (poolSize >= 0xffff || methodCount >= 0xffff)
+					return null;
+			}
+
+		// private static tests<k>_<part>(J)Z for the parts of the too long disjunctions
+		for (int k=0; k<separate.length; k++)
+			for (int from=tree.start[k]; tree.start[k+1]-tree.start[k] > TESTS_LIMIT && from<tree.start[k+1]; from+=TESTS_LIMIT) {
+				body = new ByteArrayOutputStream();
+				ArrayList<int[]> jumps = new ArrayList<int[]>();
+				ArrayList<Integer> literals = tests(body, from, Math.min(from + TESTS_LIMIT, tree.start[k+1]));
+				body.write(0x03); // iconst_0
+				body.write(0xac); // ireturn
+				// a satisfied literal jumps here
+				for (int jump : literals)
+					jumps.add(new int[]{jump, body.size()});
+				body.write(0x04); // iconst_1
+				body.write(0xac); // ireturn
+				method(methods, 0x0002 | 0x0008, "tests" + k + "_" + (from - tree.start[k]) / TESTS_LIMIT, "(J)Z", 4, 2,
+						patch(body, jumps), code);
+				methodCount++;
+				if (poolSize >= 0xffff || methodCount >= 0xffff)
+					return null;
+			}
+
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(result);
+		out.writeInt(0xcafebabe);
+		out.writeShort(0);  // minor version
+		out.writeShort(49); // major version
+		out.writeShort(poolSize);
+		poolOut.flush();
+		out.write(poolBytes.toByteArray());
+		out.writeShort(0x0001 | 0x0010 | 0x0020); // public final super
+		out.writeShort(thisClass);
+		out.writeShort(superClass);
+		out.writeShort(1);
+		out.writeShort(iface);
+		out.writeShort(0); // fields
+		out.writeShort(methodCount);
+		methods.flush();
+		out.write(methodBytes.toByteArray());
+		out.writeShort(0); // attributes
+		out.flush();
+		return result.toByteArray();
+	}
+
+	/**
+	 * Writes the code of the subtree of an inner node, the sample is in the local variable 0
+	 * @param body	Code of the method
+	 * @param jumps	Jumps to be patched once the method is written: {position, target}
+	 * @param k		The inner node
+	 * @param name	Internal name of the class
+	 */
+	private void node(ByteArrayOutputStream body, ArrayList<int[]> jumps, int k, String name) {
+		ArrayList<Integer> literals;
+		if (tree.start[k+1] - tree.start[k] <= TESTS_LIMIT)
+			literals = tests(body, tree.start[k], tree.start[k+1]);
+		else {
+			// the parts of the disjunction are tested by their own methods
+			literals = new ArrayList<Integer>();
+			for (int part=0; part*TESTS_LIMIT < tree.start[k+1] - tree.start[k]; part++) {
+				body.write(0x1e); // lload_0
+				body.write(0xb8); // invokestatic
+				writeShort(body, methodRef(name, "tests" + k + "_" + part, "(J)Z"));
+				literals.add(body.size());
+				body.write(0x9a); // ifne
+				writeShort(body, 0);
+			}
+		}
+
+		child(body, jumps, tree.next[2*k], name);
+		// a satisfied literal jumps here
+		for (int jump : literals)
+			jumps.add(new int[]{jump, body.size()});
+		child(body, jumps, tree.next[2*k+1], name);
+	}
+
+	/**
+	 * Writes the bit tests of the literals from..to-1, the sample is in the local variable 0
+	 * @param body	Code of the method
+	 * @return		Positions of the jumps taken by the satisfied literals
+	 */
+	private ArrayList<Integer> tests(ByteArrayOutputStream body, int from, int to) {
+		ArrayList<Integer> literals = new ArrayList<Integer>();
+		for (int j=from; j<to; j++) {
+			body.write(0x1e); // lload_0
+			body.write(0x14); // ldc2_w
+			writeShort(body, longConstant(1L << (tree.lit[j] >>> 1)));
+			body.write(0x7f); // land
+			body.write(0x09); // lconst_0
+			body.write(0x94); // lcmp
+			literals.add(body.size());
+			body.write(((tree.lit[j] & 1) == 1)?0x9a:0x99); // ifne (positive atom) / ifeq (negated atom)
+			writeShort(body, 0);
+		}
+		return literals;
+	}
+
+	/**
+	 * @param body	Code of a method
+	 * @param jumps	Its jumps: {position, target}
+	 * @return		The code with the offsets of the jumps filled in
+	 * @throws IOException	If an offset does not fit into the 16 bits of a branch
+	 */
+	private static byte[] patch(ByteArrayOutputStream body, ArrayList<int[]> jumps) throws IOException {
+		byte[] bytes = body.toByteArray();
+		for (int[] jump : jumps) {
+			int offset = jump[1] - jump[0];
+			if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE)
+				throw new IOException("Branch offset "+offset+" of a generated method does not fit into 16 bits");
+			bytes[jump[0]+1] = (byte) (offset >>> 8);
+			bytes[jump[0]+2] = (byte) offset;
+		}
+		return bytes;
+	}
+
+	private void child(ByteArrayOutputStream body, ArrayList<int[]> jumps, int child, String name) {
+		if (child < 0) {
+			body.write((child == CompiledTree.LEAF_YES)?0x04:0x03); // iconst_1 / iconst_0
+			body.write(0xac); // ireturn
+		} else if (separate[child]) {
+			body.write(0x1e); // lload_0
+			body.write(0xb8); // invokestatic
+			writeShort(body, methodRef(name, "node" + child, "(J)Z"));
+			body.write(0xac); // ireturn
+		} else
+			node(body, jumps, child, name);
+	}
+
+	private void method(DataOutputStream methods, int access, String name, String descriptor,
+			int maxStack, int maxLocals, byte[] code, int codeAttribute) throws IOException {
+		methods.writeShort(access);
+		methods.writeShort(utf8(name));
+		methods.writeShort(utf8(descriptor));
+		methods.writeShort(1);
+		methods.writeShort(codeAttribute);
+		methods.writeInt(12 + code.length);
+		methods.writeShort(maxStack);
+		methods.writeShort(maxLocals);
+		methods.writeInt(code.length);
+		methods.write(code);
+		methods.writeShort(0); // exception table
+		methods.writeShort(0); // attributes
+	}
+
+	// Constant pool
+
+	private int utf8(String value) {
+		String key = "U" + value;
+		Integer index = pool.get(key);
+		if (index == null) {
+			index = entry(key, 1);
+			try {
+				poolOut.writeByte(1);
+				poolOut.writeUTF(value);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return index;
+	}
+
+	private int classRef(String name) {
+		int utf = utf8(name);
+		Integer index = pool.get("C" + name);
+		if (index == null) {
+			index = entry("C" + name, 1);
+			writePool(7, utf);
+		}
+		return index;
+	}
+
+	private int methodRef(String owner, String name, String descriptor) {
+		String key = "M" + owner + "." + name + descriptor;
+		Integer index = pool.get(key);
+		if (index == null) {
+			int ownerClass = classRef(owner);
+			int nameIndex = utf8(name);
+			int descriptorIndex = utf8(descriptor);
+			Integer nameAndType = pool.get("N" + name + descriptor);
+			if (nameAndType == null) {
+				nameAndType = entry("N" + name + descriptor, 1);
+				writePool(12, nameIndex, descriptorIndex);
+			}
+			index = entry(key, 1);
+			writePool(10, ownerClass, nameAndType);
+		}
+		return index;
+	}
+
+	private int longConstant(long value) {
+		String key = "J" + value;
+		Integer index = pool.get(key);
+		if (index == null) {
+			index = entry(key, 2); // a long takes two slots
+			try {
+				poolOut.writeByte(5);
+				poolOut.writeLong(value);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return index;
+	}
+
+	private int entry(String key, int slots) {
+		int index = poolSize;
+		pool.put(key, index);
+		poolSize += slots;
+		return index;
+	}
+
+	private void writePool(int tag, int... indices) {
+		try {
+			poolOut.writeByte(tag);
+			for (int index : indices)
+				poolOut.writeShort(index);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void writeShort(ByteArrayOutputStream out, int value) {
+		out.write(value >>> 8);
+		out.write(value);
+	}
+
+	/**
+	 * Class loader of one generated class
+	 */
+	private static class Loader extends ClassLoader {
+		private Loader(ClassLoader parent) {
+			super(parent);
+		}
+
+		private Class<?> define(String name, byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+
+}
@@ -0,0 +1,169 @@
+package machinelearning;
+
+import java.util.ArrayList;
+
+/**
+ * Column-wise bit-packed view of a dataset <br>
+ * For every attribute there is one bitset over the instances, <br>
+ * so the counting needed for splitting is done with popcounts <br>
+ * Weighted instances are counted by slicing the weights bit by bit
+ * @author vtoman - Viktor Toman
+ * viktor.toman@ist.ac.at
+ *
+ */
+class Columns {
+
+	final int rows;
+	final int words;
+	final long[][] att; // bit r of att[i] is set iff instance r has attribute i set to 1
+	final long[] yes;   // bit r is set iff instance r is a YES instance
+	final long[] all;   // bit r is set iff r < rows
+	final long[][] weight; // bit r of weight[b] is bit b of the weight of instance r, null if all weights are 1
+
+	private static final int BLOCK = 64; // words packed by one task
+
+	/**
+	 * Packs given instances column by column
+	 * @param instances	The instances to be packed
+	 * @param numAtt	Number of their attributes
+	 * @param parallel	Pack blocks of instances over the fork/join pool?
+	 */
+	Columns(final ArrayList<Instance> instances, final int numAtt, boolean parallel) {
+		this.rows = instances.size();
+		this.words = (rows + 63) >>> 6;
+
+		this.att = new long[numAtt][words];
+		this.yes = new long[words];
+		this.all = new long[words];
+		for (int w=0; w<words; w++)
+			all[w] = (w < rows >>> 6)?-1L:(1L << (rows & 63)) - 1;
+		int maxweight = 1;
+		for (Instance instance : instances)
+			maxweight = Math.max(maxweight, instance.weight);
+		this.weight = (maxweight == 1)?null:new long[32 - Integer.numberOfLeadingZeros(maxweight)][words];
+		// every block fills its own words, so the blocks do not interfere
+		ParallelFor.run(0, (words + BLOCK - 1) / BLOCK, parallel, new ParallelFor.Body() {
+			public void step(int block) {
+				int end = Math.min(rows, (block + 1) * BLOCK * 64);
+				for (int r=block*BLOCK*64; r<end; r++) {
+					Instance instance = instances.get(r);
+					long bit = 1L << r;
+					int word = r >>> 6;
+					for (int i=0; i<numAtt; i++)
+						if (instance.attValues.get(i))
+							att[i][word] |= bit;
+					if (instance.classValue)
+						yes[word] |= bit;
+					if (weight != null)
+						for (int b=0; b<weight.length; b++)
+							if ((instance.weight & (1 << b)) != 0)
+								weight[b][word] |= bit;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Packs given rows of a memory-mapped binary file column by column
+	 * @param file		The mapped file
+	 * @param rows		Rows of the file, row rows[r] becomes instance r
+	 * @param positions	Attributes of the file, attribute positions.get(i) becomes attribute i
+	 * @param parallel	Pack blocks of rows over the fork/join pool?
+	 */
+	Columns(final BinaryFile file, final int[] rows, ArrayList<Integer> positions, boolean parallel) {
+		this.rows = rows.length;
+		this.words = (this.rows + 63) >>> 6;
+
+		final int numAtt = positions.size();
+		final int[] position = new int[numAtt];
+		for (int i=0; i<numAtt; i++)
+			position[i] = positions.get(i);
+		final int classBit = file.attributes.size();
+		this.att = new long[numAtt][words];
+		this.yes = new long[words];
+		this.all = new long[words];
+		for (int w=0; w<words; w++)
+			all[w] = (w < this.rows >>> 6)?-1L:(1L << (this.rows & 63)) - 1;
+		this.weight = null;
+		ParallelFor.run(0, (words + BLOCK - 1) / BLOCK, parallel, new ParallelFor.Body() {
+			public void step(int block) {
+				long[] row = new long[file.rowWords()];
+				int end = Math.min(rows.length, (block + 1) * BLOCK * 64);
+				for (int r=block*BLOCK*64; r<end; r++) {
+					file.row(rows[r], row);
+					long bit = 1L << r;
+					int word = r >>> 6;
+					for (int i=0; i<numAtt; i++)
+						if (ArffReader.bit(row, position[i]))
+							att[i][word] |= bit;
+					if (ArffReader.bit(row, classBit))
+						yes[word] |= bit;
+				}
+			}
+		});
+	}
+
+	/**
+	 * @param a	Bitset
+	 * @return	Weighted number of instances in a
+	 */
+	int count(long[] a) {
+		int result = 0;
+		if (weight == null) {
+			for (int w=0; w<words; w++)
+				result += Long.bitCount(a[w]);
+		} else {
+			for (int b=0; b<weight.length; b++) {
+				int slice = 0;
+				for (int w=0; w<words; w++)
+					slice += Long.bitCount(a[w] & weight[b][w]);
+				result += slice << b;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param a	Bitset
+	 * @param b	Bitset
+	 * @return	Weighted number of instances both in a and b
+	 */
+	int count(long[] a, long[] b) {
+		int result = 0;
+		if (weight == null) {
+			for (int w=0; w<words; w++)
+				result += Long.bitCount(a[w] & b[w]);
+		} else {
+			for (int k=0; k<weight.length; k++) {
+				int slice = 0;
+				for (int w=0; w<words; w++)
+					slice += Long.bitCount(a[w] & b[w] & weight[k][w]);
+				result += slice << k;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param a	Bitset
+	 * @param b	Bitset
+	 * @param c	Bitset
+	 * @return	Weighted number of instances in a, b and c
+	 */
+	int count(long[] a, long[] b, long[] c) {
+		int result = 0;
+		if (weight == null) {
+			for (int w=0; w<words; w++)
+				result += Long.bitCount(a[w] & b[w] & c[w]);
+		} else {
+			for (int k=0; k<weight.length; k++) {
+				int slice = 0;
+				for (int w=0; w<words; w++)
+					slice += Long.bitCount(a[w] & b[w] & c[w] & weight[k][w]);
+				result += slice << k;
+			}
+		}
+		return result;
+	}
+
+}
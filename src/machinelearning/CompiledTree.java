@@ -0,0 +1,310 @@
+package machinelearning;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+
+import util.Pair;
+
+/**
+ * Decision tree flattened into int arrays, classifying bitvector samples <br>
+ * Inner nodes are numbered 0..n-1 (breadth-first), a child is either <br>
+ * an inner node (its number) or a leaf (LEAF_NO / LEAF_YES) <br>
+ * Bit i of a sample is the value of attribute i
+ * @author vtoman - Viktor Toman
+ * viktor.toman@ist.ac.at
+ *
+ */
+public class CompiledTree implements Classifier, Controller {
+
+	static final int LEAF_NO = -1;
+	static final int LEAF_YES = -2;
+
+	public final int numberOfAttributes;
+	final int root;     // the root node (or a leaf)
+	final int[] start;  // literals of node k are lit[start[k]] .. lit[start[k+1]-1]
+	final int[] lit;    // 2*attribute + (1 if the atom is positive, 0 if negated)
+	final int[] next;   // next[2*k] - child when the predicate of k is not satisfied, next[2*k+1] - when it is
+
+	/**
+	 * Flattens a given decision tree
+	 * @param tree	The decision tree
+	 */
+	CompiledTree(DecisionTree tree) {
+		this.numberOfAttributes = tree.attNames.size();
+		int inner = 0;
+		int literals = 0;
+		ArrayList<DecisionTree.Node> nodes = new ArrayList<DecisionTree.Node>();
+		LinkedList<DecisionTree.Node> queue = new LinkedList<DecisionTree.Node>();
+		queue.add(tree.root);
+		while (queue.size() > 0) {
+			DecisionTree.Node current = queue.remove();
+			if (current.isLeaf()) continue;
+			nodes.add(current);
+			inner++;
+			literals += current.predicate.size();
+			queue.addAll(current.children);
+		}
+
+		this.start = new int[inner + 1];
+		this.lit = new int[literals];
+		this.next = new int[2*inner];
+		// nodes are numbered in the order of the list above
+		IdentityHashMap<DecisionTree.Node,Integer> number = new IdentityHashMap<DecisionTree.Node,Integer>();
+		for (int k=0; k<inner; k++)
+			number.put(nodes.get(k), k);
+
+		int j = 0;
+		for (int k=0; k<inner; k++) {
+			DecisionTree.Node current = nodes.get(k);
+			start[k] = j;
+			for (int i=0; i<numberOfAttributes; i++)
+				for (Pair<Boolean,Integer> atom : current.predicate)
+					if (atom.second() == i)
+						lit[j++] = 2*i + (atom.first()?1:0);
+			for (int c=0; c<2; c++)
+				next[2*k+c] = code(current.children.get(c), number);
+		}
+		start[inner] = j;
+		assert(j == literals);
+		this.root = code(tree.root, number);
+	}
+
+	private static int code(DecisionTree.Node node, IdentityHashMap<DecisionTree.Node,Integer> number) {
+		if (node.isLeaf())
+			return node.classification?LEAF_YES:LEAF_NO;
+		return number.get(node);
+	}
+
+	/**
+	 * @return Number of inner nodes
+	 */
+	public int numberOfInnerNodes() { return start.length - 1; }
+
+	/**
+	 * Classifies a given sample of at most 64 attributes
+	 * @param bits	The sample, bit i is the value of attribute i
+	 * @return		TRUE - yes, FALSE - no
+	 */
+	public boolean classify(long bits) {
+		assert(numberOfAttributes <= 64);
+		int node = root;
+		while (node >= 0) {
+			int satisfied = 0;
+			for (int j=start[node]; j<start[node+1]; j++)
+				if ((int) ((bits >>> (lit[j] >>> 1)) & 1L) == (lit[j] & 1)) {
+					satisfied = 1;
+					break;
+				}
+			node = next[2*node + satisfied];
+		}
+		return (node == LEAF_YES);
+	}
+
+	/**
+	 * Classifies a given sample
+	 * @param bits	The sample, bit i (of word i/64) is the value of attribute i
+	 * @return		TRUE - yes, FALSE - no
+	 */
+	public boolean classify(long[] bits) {
+		int node = root;
+		while (node >= 0) {
+			int satisfied = 0;
+			for (int j=start[node]; j<start[node+1]; j++) {
+				int attribute = lit[j] >>> 1;
+				if ((int) ((bits[attribute >>> 6] >>> attribute) & 1L) == (lit[j] & 1)) {
+					satisfied = 1;
+					break;
+				}
+			}
+			node = next[2*node + satisfied];
+		}
+		return (node == LEAF_YES);
+	}
+
+	// ACTION[b] - the actions 0..63 with bit b set
+	private static final long[] ACTION = {0xAAAAAAAAAAAAAAAAL, 0xCCCCCCCCCCCCCCCCL, 0xF0F0F0F0F0F0F0F0L,
+										  0xFF00FF00FF00FF00L, 0xFFFF0000FFFF0000L, 0xFFFFFFFF00000000L};
+
+	/**
+	 * Computes all the actions allowed in a given state at once, <br>
+	 * the tree is walked once with the action bits left open <br>
+	 * (only nodes testing action bits branch into both children)
+	 * @param bits		The sample with the state bits set, the action bits are overwritten
+	 * @param from		Attribute of the lowest action bit
+	 * @param length	Number of action bits
+	 * @return			Action i (as in Util.binary) is allowed iff bit i (of word i/64) is set
+	 */
+	public long[] allowedActions(long[] bits, int from, int length) {
+		int open = Math.min(length, 6);
+		long[] result = new long[(length <= 6)?1:1 << (length - 6)];
+		long all = (open == 6)?-1L:(1L << (1 << open)) - 1;
+		// every word is one walk, the action bits above the lowest six are fixed in it
+		for (int w=0; w<result.length; w++) {
+			set(bits, from + open, length - open, w);
+			result[w] = allowed(root, bits, from, open, all);
+		}
+		return result;
+	}
+
+	/**
+	 * @param node	Node (or leaf) where the walk is
+	 * @param bits	The sample
+	 * @param from	Attribute of the lowest action bit
+	 * @param open	Number of open action bits
+	 * @param live	Actions reaching the node
+	 * @return		Actions of live classified YES in the subtree
+	 */
+	private long allowed(int node, long[] bits, int from, int open, long live) {
+		while (live != 0 && node >= 0) {
+			long satisfied = 0;
+			for (int j=start[node]; j<start[node+1]; j++) {
+				int attribute = lit[j] >>> 1;
+				if (attribute >= from && attribute < from + open)
+					satisfied |= ((lit[j] & 1) == 1)?ACTION[attribute - from]:~ACTION[attribute - from];
+				else if ((int) ((bits[attribute >>> 6] >>> attribute) & 1L) == (lit[j] & 1)) {
+					satisfied = -1L;
+					break;
+				}
+			}
+			if ((live & ~satisfied) == 0)
+				node = next[2*node + 1];
+			else if ((live & satisfied) == 0)
+				node = next[2*node];
+			else
+				return allowed(next[2*node + 1], bits, from, open, live & satisfied)
+						| allowed(next[2*node], bits, from, open, live & ~satisfied);
+		}
+		return (node == LEAF_YES)?live:0;
+	}
+
+	/**
+	 * Classifies samples given column by column
+	 * @param columns	Bit r (of word r/64) of columns[i] is the value of attribute i in sample r
+	 * @param rows		Number of samples
+	 * @return			Bit r (of word r/64) is set iff sample r is classified YES
+	 */
+	public long[] classifyColumns(long[][] columns, int rows) {
+		assert(columns.length == numberOfAttributes);
+		long[] result = new long[(rows + 63) >>> 6];
+		long[] block = new long[numberOfAttributes];
+		for (int w=0; w<result.length; w++) {
+			for (int attribute=0; attribute<numberOfAttributes; attribute++)
+				block[attribute] = columns[attribute][w];
+			result[w] = route(root, block, (w < rows >>> 6)?-1L:(1L << (rows & 63)) - 1);
+		}
+		return result;
+	}
+
+	/**
+	 * Classifies samples given row by row
+	 * @param samples	Sample r occupies the words r*stride .. (r+1)*stride-1, where stride = sample().length
+	 * @param rows		Number of samples
+	 * @return			Bit r (of word r/64) is set iff sample r is classified YES
+	 */
+	public long[] classifyRows(long[] samples, int rows) {
+		int stride = (numberOfAttributes + 63) >>> 6;
+		assert(samples.length >= rows * stride);
+		long[] result = new long[(rows + 63) >>> 6];
+		long[] block = new long[numberOfAttributes];
+		for (int w=0; w<result.length; w++) {
+			// transpose the next 64 samples into columns
+			Arrays.fill(block, 0);
+			int end = Math.min(rows, 64*w + 64);
+			for (int r=64*w; r<end; r++)
+				for (int word=0; word<stride; word++)
+					for (long bits = samples[r*stride + word]; bits != 0; bits &= bits - 1)
+						block[64*word + Long.numberOfTrailingZeros(bits)] |= 1L << r;
+			result[w] = route(root, block, (w < rows >>> 6)?-1L:(1L << (rows & 63)) - 1);
+		}
+		return result;
+	}
+
+	/**
+	 * Classifies all the instances of a dataset
+	 * @param data	Dataset over the attributes of this tree (in the same order)
+	 * @return		Bit r (of word r/64) is set iff instance r is classified YES
+	 */
+	public long[] classify(Dataset data) {
+		assert(data.attributes.size() == numberOfAttributes);
+		Columns columns = data.columns(((long) data.size()) * numberOfAttributes >= Dataset.parallelThreshold);
+		return classifyColumns(columns.att, columns.rows);
+	}
+
+	/**
+	 * Routes a block of (at most 64) samples down the tree
+	 * @param node	Node (or leaf) where the block is
+	 * @param block	Bit r of block[i] is the value of attribute i in sample r
+	 * @param live	Samples reaching the node
+	 * @return		Samples of live classified YES in the subtree
+	 */
+	private long route(int node, long[] block, long live) {
+		while (live != 0 && node >= 0) {
+			long satisfied = 0;
+			for (int j=start[node]; j<start[node+1]; j++)
+				satisfied |= ((lit[j] & 1) == 1)?block[lit[j] >>> 1]:~block[lit[j] >>> 1];
+			if ((live & ~satisfied) == 0)
+				node = next[2*node + 1];
+			else if ((live & satisfied) == 0)
+				node = next[2*node];
+			else
+				return route(next[2*node + 1], block, live & satisfied)
+						| route(next[2*node], block, live & ~satisfied);
+		}
+		return (node == LEAF_YES)?live:0;
+	}
+
+	/**
+	 * Generates a class classifying by straight-line code (nested tests of the sample bits), <br>
+	 * so the JIT can compile the tree into its callers
+	 * @return	Instance of the generated class, <br>
+	 * 			or this tree itself if the tree has more than 64 attributes or does not fit into a class
+	 */
+	public Classifier generate() {
+		Classifier result = ClassifierGenerator.generate(this);
+		return (result == null)?this:result;
+	}
+
+	/**
+	 * @return An empty sample for this tree
+	 */
+	public long[] sample() {
+		return new long[(numberOfAttributes + 63) >>> 6];
+	}
+
+	/**
+	 * Writes given values into a sample
+	 * @param bits		The sample
+	 * @param from		Attribute of the first value
+	 * @param values	The values
+	 */
+	public static void set(long[] bits, int from, ArrayList<Boolean> values) {
+		for (int i=0; i<values.size(); i++) {
+			int attribute = from + i;
+			if (values.get(i))
+				bits[attribute >>> 6] |= 1L << attribute;
+			else
+				bits[attribute >>> 6] &= ~(1L << attribute);
+		}
+	}
+
+	/**
+	 * Writes the binary representation of a number into a sample <br>
+	 * (the same as set(bits, from, Util.binary(length, decimal)))
+	 * @param bits		The sample
+	 * @param from		Attribute of the lowest bit
+	 * @param length	Number of bits
+	 * @param decimal	The number
+	 */
+	public static void set(long[] bits, int from, int length, int decimal) {
+		for (int i=0; i<length; i++) {
+			int attribute = from + i;
+			if (((decimal >>> i) & 1) == 1)
+				bits[attribute >>> 6] |= 1L << attribute;
+			else
+				bits[attribute >>> 6] &= ~(1L << attribute);
+		}
+	}
+
+}
@@ -0,0 +1,24 @@
+package machinelearning;
+
+/**
+ * Gives the actions a learned strategy allows in a state
+ * @author vtoman - Viktor Toman
+ * viktor.toman@ist.ac.at
+ *
+ */
+public interface Controller {
+
+	/**
+	 * @return An empty sample (room for all the attributes the controller reads)
+	 */
+	long[] sample();
+
+	/**
+	 * @param bits		The sample with the state bits set (bit i of word i/64 is attribute i)
+	 * @param from		Attribute of the lowest action bit (the number of state bits)
+	 * @param length	Number of action bits
+	 * @return			Action i (as in Util.binary) is allowed iff bit i (of word i/64) is set
+	 */
+	long[] allowedActions(long[] bits, int from, int length);
+
+}
@@ -2,14 +2,21 @@ package machinelearning;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Scanner;
+import java.util.Random;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.zip.GZIPOutputStream;
 
 import model.Game;
 import strategy.Strategy;
@@ -30,6 +37,34 @@ public class Dataset {
 	public int numYES;
 	public int numNO;
 
+	/** The split search runs over the fork/join pool once instances times attributes reaches this */
+	public static long parallelThreshold = 1L << 20;
+
+	/** Probability that a sampled choice is not the exact best atom */
+	public static double samplingDelta = 1e-6;
+
+	/** The routines creating datasets write their binary files next to the ARFF files */
+	public static boolean binaryFiles = true;
+	/** ARFF files are written gzip-compressed (filename.arff.gz) */
+	public static boolean gzipFiles = false;
+
+	/** Binary files whose instances would take more heap than this (in bytes) stay memory-mapped, <br>
+	 *  the datasets then keep only the indices of their rows and read the rows from the file */
+	public static long mappedBytes = Runtime.getRuntime().maxMemory() / 4;
+	/** A memory-mapped dataset with fewer than this many values (rows times attributes) is read into the heap */
+	public static long loadThreshold = 1L << 22;
+
+	// A dataset of a memory-mapped binary file has no instance list,
+	// its rows are those of the file listed in mappedRows (with the weight 1 each)
+	private BinaryFile mapped;
+	private int[] mappedRows;
+
+	// While the dataset waits to be processed, its instances can be packed
+	// into bit rows (attributes, then the class bit) and the list released
+	private long[] packed;
+	private int[] packedWeights; // null if all weights are 1
+	private int packedSize;
+
 	/** Constructor which creates a dataset from given attributes and strategy
 	 * @param  game       Game instance
 	 * @param  strategy   Use this strategy to create instances
@@ -68,132 +103,83 @@ public class Dataset {
 	}
 
 	/**
-	 * Creates a dataset from an ARFF file
-	 * @param filename		Read this ARFF file
+	 * Creates a dataset from its binary file if there is one, otherwise from its ARFF file, <br>
+	 * its rows are kept packed (the instance list is made by unpack or load)
+	 * @param filename		Read this dataset file
 	 * @param writer		Here write the report
 	 * @throws IOException	Propagate this to the method that gave you the writer handle
 	 */
 	public Dataset(String filename, BufferedWriter writer) throws IOException {
-		try (Scanner sc = new Scanner(new File("results/datasets/"+filename+".arff"))) {
-			String token;
-			int test;
-
-			this.positions = new ArrayList<Integer>();
-			this.attributes = new ArrayList<String>();
-			this.instances = new ArrayList<Instance>();
-
-			boolean now = false;
-			while (!now) {
-				token = sc.next();
-				if (token.equals("FILE:")) now = true;
-			}
-			token = sc.next();
-			token = token.substring(6);
-			writer.write(String.format("%-30s",token));
-
-			now = false;
-			while (!now) {
-				token = sc.next();
-				if (token.equals("ESTIMATED:")) now = true;
-			}
-			test = sc.nextInt();
-			writer.write(String.format("%12d",test));
-
-			now = false;
-			while (!now) {
-				token = sc.next();
-				if (token.equals("ACTIONVARP1:")) now = true;
-			}
-			test = sc.nextInt();
-			writer.write(String.format("%6d",test));
-
-			now = false;
-			while (!now) {
-				token = sc.next();
-				if (token.equals("ACTIONVARP2:")) now = true;
-			}
-			test = sc.nextInt();
-			writer.write(String.format("%6d",test));
-
-			now = false;
-			while (!now) {
-				token = sc.next();
-				if (token.equals("PLAYER:")) now = true;
-			}
-			test = sc.nextInt();
-			assert(test == 2 || test == 1);
-			this.player = (byte) test;
-
-			now = false;
-			while (!now) {
-				token = sc.next();
-				if (token.equals("OBJECTIVE:")) now = true;
-			}
-			token = sc.next();
-			assert(token.equals("s") || token.equals("r") || token.equals("p"));
-			this.objective = token.charAt(0);
-
-			now = false;
-			while (!now) {
-				token = sc.next();
-				if (token.equals("NUMYES:")) now = true;
-			}
-			test = sc.nextInt();
-			this.numYES = test;
-
-			now = false;
-			while (!now) {
-				token = sc.next();
-				if (token.equals("NUMNO:")) now = true;
-			}
-			test = sc.nextInt();
-			this.numNO = test;
-
-			now = false;
-			while (!now) {
-				token = sc.next();
-				if (token.equals("NUMTOT:")) now = true;
-			}
-			int samples = sc.nextInt();
-			writer.write(String.format("%16d",samples));
-
-			now = false;
-			while (!now) {
-				token = sc.next();
-				if (token.equals("@RELATION")) now = true;
-			}
-			token = sc.next();
-			assert(token.equals("strategy"));
-
-			int attNumber = 0;
-			while (!token.equals("@DATA")) {
-				token = sc.next();
-				if (token.equals("@ATTRIBUTE")) {
-					token = sc.next();
-					token = token.replace("\"", "");
-					if (!token.equals("class")) {
-						this.positions.add(attNumber);
-						this.attributes.add(token);
-						attNumber++;
-					}
+		long[] rows;
+		int samples;
+		if (BinaryFile.exists(filename)) {
+			BinaryFile file = new BinaryFile(filename);
+			samples = header(file.header, file.attributes, writer);
+			if (samples * (64 + 4L*attributes.size()) > mappedBytes) {
+				// the instances would not fit, the rows stay in the file
+				mapped = file;
+				mappedRows = new int[samples];
+				for (int r=0; r<samples; r++)
+					mappedRows[r] = r;
+				return;
+			}
+			rows = file.rows();
+		} else
+			try (ArffReader reader = ArffReader.open(filename)) {
+				samples = header(reader.header, reader.attributes, writer);
+				assert(reader.relation.equals("strategy"));
+
+				// now begins the strategy, decoded into packed rows
+
+				int rowWords = reader.rowWords();
+				rows = new long[samples*rowWords];
+				long[] row = new long[rowWords];
+				for (int i=0; i<samples; i++) {
+					if (!reader.next(row))
+						throw new IOException("ARFF file "+filename+" ends after "+i+" of "+samples+" rows");
+					System.arraycopy(row, 0, rows, i*rowWords, rowWords);
 				}
 			}
 
-			// now begins the strategy
+		// the rows stay packed until the learner needs the instances (see unpack)
+		compactPacked(rows, samples);
+		assert(packedSize == 0 || totalWeight(packedWeights, packedSize) == this.numNO + this.numYES);
+	}
 
-			for (int i=0; i<samples; i++) {
-				token = sc.next();
-				ArrayList<Boolean> newb = new ArrayList<Boolean>();
-				for (int j=0; j<attNumber; j++) {
-					assert(token.charAt(2*j) == '0' || token.charAt(2*j) == '1');
-					newb.add(token.charAt(2*j) == '1');
-				}
-				assert(token.charAt(2*attNumber) == 'y' || token.charAt(2*attNumber) == 'n');
-				this.instances.add(new Instance(newb, (token.charAt(2*attNumber) == 'y')));
-			}
+	/**
+	 * Takes the metadata of a dataset file (its ARFF comments or the header of its binary file)
+	 * @param header		Values of the header keys
+	 * @param attributes	Names of the attributes
+	 * @param writer		Here write the report
+	 * @return				Number of the rows of the file
+	 */
+	private int header(HashMap<String,String> header, ArrayList<String> attributes, BufferedWriter writer) throws IOException {
+		this.positions = new ArrayList<Integer>();
+		this.attributes = new ArrayList<String>();
+
+		writer.write(String.format("%-30s",header.get("FILE").substring(6)));
+		writer.write(String.format("%12d",Integer.parseInt(header.get("STATES ESTIMATED"))));
+		writer.write(String.format("%6d",Integer.parseInt(header.get("ACTIONVARP1"))));
+		writer.write(String.format("%6d",Integer.parseInt(header.get("ACTIONVARP2"))));
+
+		int test = Integer.parseInt(header.get("PLAYER"));
+		assert(test == 2 || test == 1);
+		this.player = (byte) test;
 
-			assert(this.instances.size() == this.numNO + this.numYES);
+		String token = header.get("OBJECTIVE");
+		assert(token.equals("s") || token.equals("r") || token.equals("p"));
+		this.objective = token.charAt(0);
+
+		this.numYES = Integer.parseInt(header.get("NUMYES"));
+		this.numNO = Integer.parseInt(header.get("NUMNO"));
+		int samples = Integer.parseInt(header.get("NUMTOT"));
+		writer.write(String.format("%16d",samples));
+
+		for (int i=0; i<attributes.size(); i++) {
+			this.positions.add(i);
+			this.attributes.add(attributes.get(i));
 		}
+		return samples;
 	}
 
 	/** Private constructor used in method split for creating a dataset baseline
@@ -227,7 +213,261 @@ public class Dataset {
 		}
 
 
-		this.instances = new ArrayList<Instance>(source.instances.size());
+		if (source.instances != null)
+			this.instances = new ArrayList<Instance>(source.instances.size());
+	}
+
+	/**
+	 * Packs the instances into bit rows and releases the instance list
+	 */
+	void pack() {
+		if (packed != null || mappedRows != null) return;
+		int rowWords = (attributes.size() + 64) >>> 6;
+		packedSize = instances.size();
+		packed = new long[packedSize*rowWords];
+		packedWeights = null;
+		for (int r=0; r<packedSize; r++) {
+			Instance instance = instances.get(r);
+			if (instance.weight != 1) {
+				if (packedWeights == null) {
+					packedWeights = new int[packedSize];
+					Arrays.fill(packedWeights, 1);
+				}
+				packedWeights[r] = instance.weight;
+			}
+			for (int i=0; i<attributes.size(); i++)
+				if (instance.attValues.get(i))
+					packed[r*rowWords + (i >>> 6)] |= 1L << i;
+			if (instance.classValue)
+				packed[r*rowWords + (attributes.size() >>> 6)] |= 1L << attributes.size();
+		}
+		instances = null;
+	}
+
+	/**
+	 * Restores the instance list from the packed bit rows <br>
+	 * (synchronized, the trees of a learning session can start on the same dataset at once)
+	 */
+	synchronized void unpack() {
+		if (packed == null) return;
+		int rowWords = (attributes.size() + 64) >>> 6;
+		// the list is filled before it is published, size() reads it without the lock
+		ArrayList<Instance> instances = new ArrayList<Instance>(packedSize);
+		for (int r=0; r<packedSize; r++) {
+			ArrayList<Boolean> values = new ArrayList<Boolean>(attributes.size());
+			for (int i=0; i<attributes.size(); i++)
+				values.add((packed[r*rowWords + (i >>> 6)] & (1L << i)) != 0);
+			boolean classValue = (packed[r*rowWords + (attributes.size() >>> 6)] & (1L << attributes.size())) != 0;
+			Instance instance = new Instance(values, classValue);
+			if (packedWeights != null)
+				instance.weight = packedWeights[r];
+			instances.add(instance);
+		}
+		this.instances = instances;
+		packed = null;
+		packedWeights = null;
+	}
+
+	/**
+	 * @return Rough estimate of the heap occupied by the instances
+	 */
+	long estimatedBytes() {
+		if (mappedRows != null)
+			return 16 + 4L*mappedRows.length;
+		if (packed != null)
+			return 16 + 8L*packed.length + (packedWeights == null?0:4L*packedWeights.length);
+		// instance, its list and the array of references inside
+		return instances.size() * (64 + 4L*attributes.size());
+	}
+
+	/**
+	 * Reads the rows of a memory-mapped dataset into the instance list (and restores a packed one)
+	 */
+	public synchronized void load() {
+		unpack();
+		if (mappedRows == null) return;
+		int numAtt = attributes.size();
+		int rowWords = (numAtt + 64) >>> 6;
+		long[] rows = new long[mappedRows.length*rowWords];
+		long[] row = new long[mapped.rowWords()];
+		for (int r=0; r<mappedRows.length; r++) {
+			mapped.row(mappedRows[r], row);
+			for (int i=0; i<numAtt; i++)
+				if (ArffReader.bit(row, positions.get(i)))
+					rows[r*rowWords + (i >>> 6)] |= 1L << i;
+			if (ArffReader.bit(row, mapped.attributes.size()))
+				rows[r*rowWords + (numAtt >>> 6)] |= 1L << numAtt;
+		}
+		int number = mappedRows.length;
+		mapped = null;
+		mappedRows = null;
+		compactPacked(rows, number);
+		unpack();
+	}
+
+	/**
+	 * The rows of the dataset packed into bits (the attributes, then the class bit), (numAtt+64)/64 words each, <br>
+	 * identical instances once; a memory-mapped dataset is read row by row from its file, <br>
+	 * so the rows take a fraction of the heap its instances would
+	 * @param yesOnly	Only the YES rows?
+	 * @return			The rows
+	 */
+	long[] rows(boolean yesOnly) {
+		int numAtt = attributes.size();
+		int rowWords = (numAtt + 64) >>> 6;
+		if (mappedRows == null && instances == null && !yesOnly)
+			return Arrays.copyOf(packed, packedSize*rowWords);
+		long[] rows = new long[((mappedRows != null && yesOnly)?numYES:size())*rowWords];
+		int k = 0;
+		if (mappedRows != null) {
+			long[] row = new long[mapped.rowWords()];
+			for (int r=0; r<mappedRows.length; r++) {
+				mapped.row(mappedRows[r], row);
+				boolean yes = ArffReader.bit(row, mapped.attributes.size());
+				if (yesOnly && !yes)
+					continue;
+				for (int i=0; i<numAtt; i++)
+					if (ArffReader.bit(row, positions.get(i)))
+						rows[k*rowWords + (i >>> 6)] |= 1L << i;
+				if (yes)
+					rows[k*rowWords + (numAtt >>> 6)] |= 1L << numAtt;
+				k++;
+			}
+		} else if (instances != null) {
+			for (Instance instance : instances) {
+				if (yesOnly && !instance.classValue)
+					continue;
+				for (int i=0; i<numAtt; i++)
+					if (instance.attValues.get(i))
+						rows[k*rowWords + (i >>> 6)] |= 1L << i;
+				if (instance.classValue)
+					rows[k*rowWords + (numAtt >>> 6)] |= 1L << numAtt;
+				k++;
+			}
+		} else
+			for (int r=0; r<packedSize; r++)
+				if (((packed[r*rowWords + (numAtt >>> 6)] >>> numAtt) & 1L) != 0) {
+					System.arraycopy(packed, r*rowWords, rows, k*rowWords, rowWords);
+					k++;
+				}
+		return Arrays.copyOf(rows, k*rowWords);
+	}
+
+	/**
+	 * @return Number of the rows of the dataset (instances, packed rows or rows of the mapped file)
+	 */
+	int size() {
+		if (instances != null)
+			return instances.size();
+		return (mappedRows != null)?mappedRows.length:packedSize;
+	}
+
+	/**
+	 * @param parallel	Pack blocks of rows over the fork/join pool?
+	 * @return			The dataset packed column by column
+	 */
+	Columns columns(boolean parallel) {
+		if (mappedRows != null)
+			return new Columns(mapped, mappedRows, positions, parallel);
+		return new Columns(instances, attributes.size(), parallel);
+	}
+
+	/**
+	 * Merges identical instances (same attribute values and class) into one weighted instance
+	 */
+	private void compact() {
+		HashMap<ArrayList<Boolean>,Instance> yesrows = new HashMap<ArrayList<Boolean>,Instance>();
+		HashMap<ArrayList<Boolean>,Instance> norows = new HashMap<ArrayList<Boolean>,Instance>();
+		ArrayList<Instance> merged = new ArrayList<Instance>(instances.size());
+		for (Instance instance : instances) {
+			HashMap<ArrayList<Boolean>,Instance> rows = instance.classValue?yesrows:norows;
+			Instance same = rows.get(instance.attValues);
+			if (same == null) {
+				rows.put(instance.attValues, instance);
+				merged.add(instance);
+			} else
+				same.weight += instance.weight;
+		}
+		merged.trimToSize();
+		instances = merged;
+	}
+
+	/**
+	 * Merges identical bit rows (same attribute values and class) into one weighted packed row <br>
+	 * (the same as compact, the merged rows keep the order of their first occurrences)
+	 * @param rows		Bit rows in the packed layout
+	 * @param number	Number of the rows
+	 */
+	private void compactPacked(long[] rows, int number) {
+		int rowWords = (attributes.size() + 64) >>> 6;
+		// open addressing over the kept rows, a slot holds the hash of its row and the row + 1 (0 - empty),
+		// so a row is compared only with the rows of the same hash
+		long[] table = new long[Integer.highestOneBit(Math.max(1, 2*number - 1)) << 1];
+		int mask = table.length - 1;
+		int[] weights = new int[number];
+		int size = 0;
+		for (int r=0; r<number; r++) {
+			int hash = hash(rows, r*rowWords, rowWords);
+			int slot = hash & mask;
+			int kept = -1;
+			for (long entry = table[slot]; entry != 0; entry = table[slot = (slot + 1) & mask])
+				if ((int) (entry >>> 32) == hash && same(rows, ((int) entry - 1)*rowWords, r*rowWords, rowWords)) {
+					kept = (int) entry - 1;
+					break;
+				}
+			if (kept == -1) {
+				if (size != r)
+					for (int w=0; w<rowWords; w++)
+						rows[size*rowWords + w] = rows[r*rowWords + w];
+				table[slot] = ((long) hash << 32) | (size + 1);
+				weights[size++] = 1;
+			} else
+				weights[kept]++;
+		}
+		packed = Arrays.copyOf(rows, size*rowWords);
+		packedWeights = null;
+		for (int r=0; r<size; r++)
+			if (weights[r] != 1) {
+				packedWeights = Arrays.copyOf(weights, size);
+				break;
+			}
+		packedSize = size;
+		instances = null;
+	}
+
+	private static int hash(long[] rows, int from, int length) {
+		long h = 0;
+		for (int w=from; w<from+length; w++)
+			h = (h + rows[w]) * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private static boolean same(long[] rows, int a, int b, int length) {
+		for (int w=0; w<length; w++)
+			if (rows[a+w] != rows[b+w])
+				return false;
+		return true;
+	}
+
+	private static int totalWeight(int[] weights, int size) {
+		if (weights == null)
+			return size;
+		int result = 0;
+		for (int r=0; r<size; r++)
+			result += weights[r];
+		return result;
+	}
+
+	/**
+	 * @return Number of instances, each counted with its weight
+	 */
+	private int totalWeight() {
+		if (mappedRows != null)
+			return mappedRows.length;
+		int result = 0;
+		for (Instance instance : instances)
+			result += instance.weight;
+		return result;
 	}
 
 	/** Splits the dataset based on the values of the chosen attribute
@@ -239,6 +479,8 @@ public class Dataset {
 		for (Pair<Boolean,Integer> atom : predicate)
 			assert(atom.second() >= 0 && atom.second() < attributes.size());
 		assert(attributes.size() == positions.size());
+		if (mappedRows != null)
+			return splitMapped(predicate);
 
 		Dataset unsat = new Dataset(this, predicate);
 		Dataset sat = new Dataset(this, predicate);
@@ -254,21 +496,69 @@ public class Dataset {
 			if (!satisfies) {
 				unsat.instances.add(new Instance(instances.get(i), predicate));
 				if (instances.get(i).classValue)
-					unsat.numYES++;
+					unsat.numYES += instances.get(i).weight;
 				else
-					unsat.numNO++;
+					unsat.numNO += instances.get(i).weight;
 			} else {
 				sat.instances.add(new Instance(instances.get(i), predicate));
 				if (instances.get(i).classValue)
-					sat.numYES++;
+					sat.numYES += instances.get(i).weight;
 				else
-					sat.numNO++;
+					sat.numNO += instances.get(i).weight;
 			}
 		}
 
 		unsat.instances.trimToSize();
 		sat.instances.trimToSize();
 
+		// A single atom removes an attribute which is constant on each side,
+		// so distinct instances stay distinct. A disjunction removes attributes
+		// which vary on the satisfying side, there instances may coincide.
+		if (predicate.size() > 1) {
+			unsat.compact();
+			sat.compact();
+		}
+
+		return new Pair<Dataset,Dataset>(unsat, sat);
+	}
+
+	/**
+	 * Splits a memory-mapped dataset into two lists of the rows, <br>
+	 * a part with fewer than loadThreshold values is read into the heap
+	 * @param  predicate Disjunction (or a single atom) used to split the dataset
+	 * @return Two datasets, first doesn't satisfy the predicate, second does
+	 */
+	private Pair<Dataset,Dataset> splitMapped(HashSet<Pair<Boolean,Integer>> predicate) {
+		Dataset unsat = new Dataset(this, predicate);
+		Dataset sat = new Dataset(this, predicate);
+
+		int[] unsatRows = new int[mappedRows.length];
+		int[] satRows = new int[mappedRows.length];
+		long[] row = new long[mapped.rowWords()];
+		for (int r : mappedRows) {
+			mapped.row(r, row);
+			boolean satisfies = false;
+			for (Pair<Boolean,Integer> atom : predicate)
+				if (atom.first() == ArffReader.bit(row, positions.get(atom.second()))) {
+					satisfies = true;
+					break;
+				}
+			Dataset part = satisfies?sat:unsat;
+			(satisfies?satRows:unsatRows)[part.numYES + part.numNO] = r;
+			if (ArffReader.bit(row, mapped.attributes.size()))
+				part.numYES++;
+			else
+				part.numNO++;
+		}
+
+		unsat.mapped = mapped;
+		unsat.mappedRows = Arrays.copyOf(unsatRows, unsat.numYES + unsat.numNO);
+		sat.mapped = mapped;
+		sat.mappedRows = Arrays.copyOf(satRows, sat.numYES + sat.numNO);
+		// rows coinciding on the remaining attributes stay apart, only the weights would differ
+		for (Dataset part : Arrays.asList(unsat, sat))
+			if (((long) part.mappedRows.length) * part.attributes.size() < loadThreshold)
+				part.load();
 		return new Pair<Dataset,Dataset>(unsat, sat);
 	}
 
@@ -278,91 +568,91 @@ public class Dataset {
 	 * @return
 	 */
 	protected HashSet<Pair<Boolean,Integer>> bestInfoGain(boolean allowdisjunction) {
-		assert(instances.size() == numYES + numNO);
+		return bestInfoGains(allowdisjunction, 0).second();
+	}
+
+	/**
+	 * @param samplingThreshold	Datasets with at least this many instances choose their best atom from samples, 0 - never
+	 * @return					Does the choice of the best atom of this dataset sample?
+	 */
+	boolean samples(int samplingThreshold) {
+		return samplingThreshold > 0 && instances != null && numYES + numNO >= samplingThreshold;
+	}
+
+	/**
+	 * Computes which predicate is best for splitting the dataset, <br>
+	 * both among the atoms only and with the disjunctions allowed
+	 * @param allowdisjunction	False - only atoms as predicates, True - disjunctions allowed
+	 * @param samplingThreshold	Without disjunctions, datasets with at least this many instances <br>
+	 * 							choose their best atom from growing samples (see samples), 0 - always exact
+	 * @return	First - the best atom, Second - the best predicate (the same if !allowdisjunction)
+	 */
+	Pair<HashSet<Pair<Boolean,Integer>>,HashSet<Pair<Boolean,Integer>>> bestInfoGains(boolean allowdisjunction, int samplingThreshold) {
+		assert(totalWeight() == numYES + numNO);
 		assert(numYES > 0 && numNO > 0);
 		assert(attributes.size() >= 1);
 		if (attributes.size() == 1) {
 			HashSet<Pair<Boolean,Integer>> result = new HashSet<Pair<Boolean,Integer>>();
 			result.add(new Pair<Boolean,Integer>(true,0));
-			return result;
+			return new Pair<HashSet<Pair<Boolean,Integer>>,HashSet<Pair<Boolean,Integer>>>(result, result);
 		}
 
-		TreeMap<Integer,int[]> numYESatt = new TreeMap<Integer,int[]>();
-		TreeMap<Integer,int[]> numNOatt = new TreeMap<Integer,int[]>();
-		TreeMap<Integer,int[]> numTOTatt = new TreeMap<Integer,int[]>();
-
-		for (int i=0; i<attributes.size(); i++) {
-			numYESatt.put(i, new int[2]);
-			numNOatt.put(i, new int[2]);
-			numTOTatt.put(i, new int[2]);
-			for (int j=0; j<2; j++) {
-				numYESatt.get(i)[j] = 0;
-				numNOatt.get(i)[j] = 0;
+		if (!allowdisjunction && samples(samplingThreshold)) {
+			int sampled = sampledBestAtom(samplingThreshold);
+			if (sampled > -1) {
+				HashSet<Pair<Boolean,Integer>> result = new HashSet<Pair<Boolean,Integer>>();
+				result.add(new Pair<Boolean,Integer>(true, sampled));
+				return new Pair<HashSet<Pair<Boolean,Integer>>,HashSet<Pair<Boolean,Integer>>>(result, result);
 			}
 		}
 
-		for (Instance instance : instances) {
-			if (instance.classValue) {
-				for (int i=0; i<attributes.size(); i++)
-					numYESatt.get(i)[(instance.attValues.get(i)?1:0)]++;
-			} else {
-				for (int i=0; i<attributes.size(); i++)
-					numNOatt.get(i)[(instance.attValues.get(i)?1:0)]++;
-			}
-		}
-
-		int numTOT = numYES + numNO;
-		for (int i=0; i<attributes.size(); i++)
-			for (int j=0; j<2; j++)
-				numTOTatt.get(i)[j] = numYESatt.get(i)[j] + numNOatt.get(i)[j];
-
-		TreeMap<Integer,float[]> pAtt = new TreeMap<Integer,float[]>();
-		TreeMap<Integer,float[]> pYESgAtt = new TreeMap<Integer,float[]>();
-		TreeMap<Integer,float[]> pNOgAtt = new TreeMap<Integer,float[]>();
-		float pYES = ((float) numYES) / numTOT;
-		float pNO = ((float) numNO) / numTOT;
-
-		for (int i=0; i<attributes.size(); i++) {
-			pAtt.put(i, new float[2]);
-			pYESgAtt.put(i, new float[2]);
-			pNOgAtt.put(i, new float[2]);
-			for (int j=0; j<2; j++) {
-				pAtt.get(i)[j] = ((float) numTOTatt.get(i)[j]) / numTOT;
-				if (numTOTatt.get(i)[j] == 0) {
-					pYESgAtt.get(i)[j] = 0;
-					pNOgAtt.get(i)[j] = 0;
-				} else {
-					pYESgAtt.get(i)[j] = ((float) numYESatt.get(i)[j]) / numTOTatt.get(i)[j];
-					pNOgAtt.get(i)[j] = ((float) numNOatt.get(i)[j]) / numTOTatt.get(i)[j];
+		final int numAtt = attributes.size();
+		final int numTOT = numYES + numNO;
+		boolean parallel = runInParallel();
+		final Columns columns = columns(parallel);
+
+		// numYESatt[2*i + value of i]
+		final int[] numYESatt = new int[2*numAtt];
+		final int[] numNOatt = new int[2*numAtt];
+		final int[] numTOTatt = new int[2*numAtt];
+
+		float originalentropy = entropy(numYES, numNO, numTOT);
+		assert(originalentropy > 0);
+
+		// Every attribute is counted and evaluated on its own,
+		// the best one is then picked by a sequential scan
+		final float[] gain = new float[numAtt];
+		final float original = originalentropy;
+		ParallelFor.run(0, numAtt, parallel, new ParallelFor.Body() {
+			public void step(int i) {
+				numTOTatt[2*i+1] = columns.count(columns.att[i]);
+				numYESatt[2*i+1] = columns.count(columns.att[i], columns.yes);
+				numNOatt[2*i+1] = numTOTatt[2*i+1] - numYESatt[2*i+1];
+				numTOTatt[2*i] = numTOT - numTOTatt[2*i+1];
+				numYESatt[2*i] = numYES - numYESatt[2*i+1];
+				numNOatt[2*i] = numTOTatt[2*i] - numYESatt[2*i];
+
+				float current = original;
+				for (int j=0; j<2; j++) {
+					float pAtt = ((float) numTOTatt[2*i+j]) / numTOT;
+					current -= pAtt * entropy(numYESatt[2*i+j], numNOatt[2*i+j], numTOTatt[2*i+j]);
 				}
+				gain[i] = current;
 			}
-		}
+		});
 
 		float best = (float) 0.001;
 		HashSet<Pair<Boolean,Integer>> bestpred = null;
 
-		float originalentropy = 0;
-		assert(pYES > 0 && pNO > 0);
-		originalentropy -= ( pYES * (Math.log(pYES) / Math.log(2)) );
-		originalentropy -= ( pNO  * (Math.log(pNO)  / Math.log(2)) );
-
-		for (int i=0; i<attributes.size(); i++) {
-			float current = originalentropy;
-			for (int j=0; j<2; j++) {
-				float conditionedentropy = 0;
-				if (pYESgAtt.get(i)[j] > 0)
-					conditionedentropy -= ( pYESgAtt.get(i)[j] * (Math.log(pYESgAtt.get(i)[j]) / Math.log(2)) );
-				if (pNOgAtt.get(i)[j] > 0)
-					conditionedentropy -= ( pNOgAtt.get(i)[j]  * (Math.log(pNOgAtt.get(i)[j])  / Math.log(2)) );
-				current -= pAtt.get(i)[j] * conditionedentropy;
-			}
+		for (int i=0; i<numAtt; i++) {
+			float current = gain[i];
 			if (current > best) {
 				best = current;
 				bestpred = new HashSet<Pair<Boolean,Integer>>();
 				bestpred.add(new Pair<Boolean,Integer>(true, i));
 			}
 		}
-
+		HashSet<Pair<Boolean,Integer>> bestatom = bestpred;
 
 		// Take two special disjunction into consideration
 
@@ -373,118 +663,81 @@ public class Dataset {
 			TreeSet<Integer> oneOnlyNo = new TreeSet<Integer>();
 
 			for (int i=0; i<attributes.size(); i++) {
-				if (numYESatt.get(i)[0] == numTOTatt.get(i)[0] && numTOTatt.get(i)[0] > 0) {
-					assert(numNOatt.get(i)[0] == 0);
-					assert(numNOatt.get(i)[1] > 0);
+				if (numYESatt[2*i] == numTOTatt[2*i] && numTOTatt[2*i] > 0) {
+					assert(numNOatt[2*i] == 0);
+					assert(numNOatt[2*i+1] > 0);
 					zeroOnlyYes.add(i);
 				}
-				if (numNOatt.get(i)[0] == numTOTatt.get(i)[0] && numTOTatt.get(i)[0] > 0) {
-					assert(numYESatt.get(i)[0] == 0);
-					assert(numYESatt.get(i)[1] > 0);
+				if (numNOatt[2*i] == numTOTatt[2*i] && numTOTatt[2*i] > 0) {
+					assert(numYESatt[2*i] == 0);
+					assert(numYESatt[2*i+1] > 0);
 					zeroOnlyNo.add(i);
 				}
-				if (numYESatt.get(i)[1] == numTOTatt.get(i)[1] && numTOTatt.get(i)[1] > 0) {
-					assert(numNOatt.get(i)[1] == 0);
-					assert(numNOatt.get(i)[0] > 0);
+				if (numYESatt[2*i+1] == numTOTatt[2*i+1] && numTOTatt[2*i+1] > 0) {
+					assert(numNOatt[2*i+1] == 0);
+					assert(numNOatt[2*i] > 0);
 					oneOnlyYes.add(i);
 				}
-				if (numNOatt.get(i)[1] == numTOTatt.get(i)[1] && numTOTatt.get(i)[1] > 0) {
-					assert(numYESatt.get(i)[1] == 0);
-					assert(numYESatt.get(i)[0] > 0);
+				if (numNOatt[2*i+1] == numTOTatt[2*i+1] && numTOTatt[2*i+1] > 0) {
+					assert(numYESatt[2*i+1] == 0);
+					assert(numYESatt[2*i] > 0);
 					oneOnlyNo.add(i);
 				}
 			}
 
 			if (zeroOnlyYes.size() + oneOnlyYes.size() <= 1 &&
 					zeroOnlyNo.size() + oneOnlyNo.size() <= 1)
-				return bestpred;
-
-			HashSet<Pair<Integer,Integer>> couldbesame = new HashSet<Pair<Integer,Integer>>();
-			for (int at1 : zeroOnlyYes) for (int at2 : zeroOnlyYes) if (at1 < at2)
-				couldbesame.add(new Pair<Integer,Integer>(at1,at2));
-			for (int at1 : zeroOnlyNo) for (int at2 : zeroOnlyNo) if (at1 < at2)
-				couldbesame.add(new Pair<Integer,Integer>(at1,at2));
-			for (int at1 : oneOnlyYes) for (int at2 : oneOnlyYes) if (at1 < at2)
-				couldbesame.add(new Pair<Integer,Integer>(at1,at2));
-			for (int at1 : oneOnlyNo) for (int at2 : oneOnlyNo) if (at1 < at2)
-				couldbesame.add(new Pair<Integer,Integer>(at1,at2));
+				return new Pair<HashSet<Pair<Boolean,Integer>>,HashSet<Pair<Boolean,Integer>>>(bestatom, bestpred);
 
-			for (Instance instance : instances) {
-				if (couldbesame.isEmpty()) break;
-				for (Iterator<Pair<Integer,Integer>> i = couldbesame.iterator(); i.hasNext();) {
-					Pair<Integer,Integer> atom = i.next();
-				    if (!instance.attValues.get(atom.first()).equals(instance.attValues.get(atom.second()))) {
-				        i.remove();
-				    }
-				}
-			}
+			// Attributes in the same set with identical columns are the same,
+			// keep only the first of them
+			TreeSet<Integer> same = new TreeSet<Integer>();
+			for (TreeSet<Integer> set : Arrays.asList(zeroOnlyYes, zeroOnlyNo, oneOnlyYes, oneOnlyNo))
+				for (int at1 : set) for (int at2 : set)
+					if (at1 < at2 && !same.contains(at2) && Arrays.equals(columns.att[at1], columns.att[at2]))
+						same.add(at2);
 
-			for (Pair<Integer,Integer> atom : couldbesame) {
-				zeroOnlyYes.remove(atom.second());
-				zeroOnlyNo.remove(atom.second());
-				oneOnlyYes.remove(atom.second());
-				oneOnlyNo.remove(atom.second());
-			}
+			zeroOnlyYes.removeAll(same);
+			zeroOnlyNo.removeAll(same);
+			oneOnlyYes.removeAll(same);
+			oneOnlyNo.removeAll(same);
 
 			if (zeroOnlyYes.size() + oneOnlyYes.size() <= 1 &&
 					zeroOnlyNo.size() + oneOnlyNo.size() <= 1)
-				return bestpred;
+				return new Pair<HashSet<Pair<Boolean,Integer>>,HashSet<Pair<Boolean,Integer>>>(bestatom, bestpred);
+
+			// Instances satisfying the disjunctions, built column by column
+			long[] satNODISJ = new long[columns.words];
+			long[] satYESDISJ = new long[columns.words];
+			for (int w=0; w<columns.words; w++) {
+				for (int i : zeroOnlyNo) satNODISJ[w] |= ~columns.att[i][w];
+				for (int i : oneOnlyNo) satNODISJ[w] |= columns.att[i][w];
+				for (int i : zeroOnlyYes) satYESDISJ[w] |= ~columns.att[i][w];
+				for (int i : oneOnlyYes) satYESDISJ[w] |= columns.att[i][w];
+			}
+			long[] unsatNODISJ = new long[columns.words];
+			long[] unsatYESDISJ = new long[columns.words];
+			long[] no = new long[columns.words];
+			for (int w=0; w<columns.words; w++) {
+				satNODISJ[w] &= columns.all[w];
+				satYESDISJ[w] &= columns.all[w];
+				unsatNODISJ[w] = columns.all[w] & ~satNODISJ[w];
+				unsatYESDISJ[w] = columns.all[w] & ~satYESDISJ[w];
+				no[w] = columns.all[w] & ~columns.yes[w];
+			}
+			assert(columns.count(satNODISJ, columns.yes) == 0);
+			assert(columns.count(satYESDISJ, no) == 0);
 
 			// Disjunction: satisfying it leads to NO
-			int numTOTunsatInNODISJ = 0;
-			int numYESunsatInNODISJ = 0;
-			int numNOunsatInNODISJ = 0;
+			// note: an instance can be unsat in both
+			int numTOTunsatInNODISJ = columns.count(unsatNODISJ);
+			int numYESunsatInNODISJ = columns.count(unsatNODISJ, columns.yes);
+			int numNOunsatInNODISJ = numTOTunsatInNODISJ - numYESunsatInNODISJ;
 
 			// Disjunction: satisfying it leads to YES
-			int numTOTunsatInYESDISJ = 0;
-			int numYESunsatInYESDISJ = 0;
-			int numNOunsatInYESDISJ = 0;
-
-
-			for (Instance instance : instances) {
-				boolean unsatNODISJ = true;
-				boolean unsatYESDISJ = true;
-
-				for (int i=0; i<attributes.size(); i++)
-					if (!instance.attValues.get(i)) {
-						// attribute value is 0
-						if (unsatYESDISJ && zeroOnlyYes.contains(i)) {
-							unsatYESDISJ = false;
-							assert(instance.classValue);
-						}
-						if (unsatNODISJ && zeroOnlyNo.contains(i)) {
-							unsatNODISJ = false;
-							assert(!instance.classValue);
-						}
-					} else {
-						// attribute value is 1
-						if (unsatYESDISJ && oneOnlyYes.contains(i)) {
-							unsatYESDISJ = false;
-							assert(instance.classValue);
-						}
-						if (unsatNODISJ && oneOnlyNo.contains(i)) {
-							unsatNODISJ = false;
-							assert(!instance.classValue);
-						}
-					}
-
-				// note: both unsat-s can be true
-				if (unsatNODISJ) {
-					numTOTunsatInNODISJ++;
-					if (instance.classValue)
-						numYESunsatInNODISJ++;
-					else
-						numNOunsatInNODISJ++;
-				}
-
-				if (unsatYESDISJ) {
-					numTOTunsatInYESDISJ++;
-					if (instance.classValue)
-						numYESunsatInYESDISJ++;
-					else
-						numNOunsatInYESDISJ++;
-				}
-			}
+			int numTOTunsatInYESDISJ = columns.count(unsatYESDISJ);
+			int numYESunsatInYESDISJ = columns.count(unsatYESDISJ, columns.yes);
+			int numNOunsatInYESDISJ = numTOTunsatInYESDISJ - numYESunsatInYESDISJ;
 
 			float pUnsatOfNODISJ = ((float) numTOTunsatInNODISJ) / numTOT;
 			float pUnsatOfYESDISJ = ((float) numTOTunsatInYESDISJ) / numTOT;
@@ -537,7 +790,86 @@ public class Dataset {
 			}
 		}
 
-		return bestpred;
+		return new Pair<HashSet<Pair<Boolean,Integer>>,HashSet<Pair<Boolean,Integer>>>(bestatom, bestpred);
+	}
+
+	/**
+	 * Chooses the best atom from growing random samples of the instances, <br>
+	 * drawn with replacement in proportion to their weights (as if the identical instances were not merged), <br>
+	 * the sample doubles until the Hoeffding bound over its draws separates the best attribute <br>
+	 * from the runner-up (and from the minimal information gain 0.001) <br>
+	 * Once the draws would reach half of the total weight, it gives up in favour of exact counting
+	 * @param samplingThreshold	The first sample has samplingThreshold/16 draws (at least 64)
+	 * @return The index of attribute which is best for splitting, <br>
+	 * 		   or (-1) if no sample decided it
+	 */
+	private int sampledBestAtom(int samplingThreshold) {
+		final int numAtt = attributes.size();
+		final int rows = instances.size();
+		final int numTOT = numYES + numNO;
+		Random random = new Random(numTOT);
+		// cumulative[r] - total weight of the instances before r
+		long[] cumulative = new long[rows + 1];
+		for (int r=0; r<rows; r++)
+			cumulative[r+1] = cumulative[r] + instances.get(r).weight;
+		int[] drawn = new int[rows];
+
+		int draws = 0;
+		int size = Math.max(64, samplingThreshold / 16);
+		while (2L*size <= numTOT) {
+			// the sample grows by the next draws, an instance drawn k times stands for k instances
+			for (; draws<size; draws++) {
+				long pick = (long) (random.nextDouble() * numTOT);
+				int r = Arrays.binarySearch(cumulative, pick);
+				r = (r >= 0)?r:-r-2; // the instance whose weight covers pick
+				while (instances.get(r).weight == 0)
+					r++;
+				drawn[r]++;
+			}
+			ArrayList<Instance> sample = new ArrayList<Instance>();
+			for (int r=0; r<rows; r++)
+				if (drawn[r] > 0)
+					sample.add(new Instance(instances.get(r), drawn[r]));
+
+			Columns columns = new Columns(sample, numAtt, ((long) sample.size()) * numAtt >= parallelThreshold);
+			int sampleTOT = columns.count(columns.all);
+			int sampleYES = columns.count(columns.yes);
+			assert(sampleTOT == draws);
+			float original = entropy(sampleYES, sampleTOT - sampleYES, sampleTOT);
+
+			float best = -1;
+			float second = -1;
+			int bestpoz = -1;
+			for (int i=0; i<numAtt; i++) {
+				int tot1 = columns.count(columns.att[i]);
+				int yes1 = columns.count(columns.att[i], columns.yes);
+				int tot0 = sampleTOT - tot1;
+				int yes0 = sampleYES - yes1;
+				float current = original;
+				current -= ((float) tot0) / sampleTOT * entropy(yes0, tot0 - yes0, tot0);
+				current -= ((float) tot1) / sampleTOT * entropy(yes1, tot1 - yes1, tot1);
+				if (current > best) {
+					second = best;
+					best = current;
+					bestpoz = i;
+				} else if (current > second)
+					second = current;
+			}
+
+			// the information gain ranges over [0,1], the bound holds for all the attributes at once
+			double epsilon = Math.sqrt(Math.log(numAtt / samplingDelta) / (2.0 * draws));
+			if (best - second > epsilon && best - epsilon > 0.001) {
+				// the chosen attribute must really split the whole dataset
+				int numTOT1 = 0;
+				for (Instance instance : instances)
+					if (instance.attValues.get(bestpoz))
+						numTOT1 += instance.weight;
+				return (numTOT1 > 0 && numTOT1 < numTOT)?bestpoz:-1;
+			}
+			size *= 2;
+		}
+
+		return -1;
 	}
 
 	/**
@@ -547,212 +879,178 @@ public class Dataset {
 	 * 		   or (-1) if there is no attribute good for splitting
 	 */
 	protected int bestInfoGainLA() {
-		assert(instances.size() == numYES + numNO);
+		assert(totalWeight() == numYES + numNO);
 		assert(numYES > 0 && numNO > 0);
 		assert(attributes.size() >= 2);
-		if (instances.size() < 4) return -1;
-
-
-		int numAtt = attributes.size();
-		TreeMap<Integer,int[][]> n2attT = new TreeMap<Integer,int[][]>();
-		TreeMap<Integer,int[][]> n2attY = new TreeMap<Integer,int[][]>();
-		TreeMap<Integer,int[][]> n2attN = new TreeMap<Integer,int[][]>();
-		for (int i=0; i<numAtt-1; i++)
-			for (int j=i; j<numAtt; j++) {
-				n2attT.put(i*numAtt+j, new int[2][2]);
-				n2attY.put(i*numAtt+j, new int[2][2]);
-				n2attN.put(i*numAtt+j, new int[2][2]);
-				for (int k=0; k<2; k++) // values of i
-					for (int l=0; l<2; l++) { // values of j
-						n2attY.get(i*numAtt+j)[k][l] = 0;
-						n2attN.get(i*numAtt+j)[k][l] = 0;
-					}
-			}
-
-		TreeMap<Integer,int[]> n1attT = new TreeMap<Integer,int[]>();
-		TreeMap<Integer,int[]> n1attY = new TreeMap<Integer,int[]>();
-		TreeMap<Integer,int[]> n1attN = new TreeMap<Integer,int[]>();
-		for (int i=0; i<numAtt; i++) {
-			n1attT.put(i, new int[2]);
-			n1attY.put(i, new int[2]);
-			n1attN.put(i, new int[2]);
-			for (int j=0; j<2; j++) {
-				n1attY.get(i)[j] = 0;
-				n1attN.get(i)[j] = 0;
+		if (numYES + numNO < 4) return -1;
+
+
+		final int numAtt = attributes.size();
+		final int numTOT = numYES + numNO;
+		boolean parallel = runInParallel();
+		final Columns columns = columns(parallel);
+
+		// n1attT[2*a1 + a1v] and n1attY[2*a1 + a1v]
+		final int[] n1attT = new int[2*numAtt];
+		final int[] n1attY = new int[2*numAtt];
+		ParallelFor.run(0, numAtt, parallel, new ParallelFor.Body() {
+			public void step(int i) {
+				n1attT[2*i+1] = columns.count(columns.att[i]);
+				n1attY[2*i+1] = columns.count(columns.att[i], columns.yes);
+				n1attT[2*i] = numTOT - n1attT[2*i+1];
+				n1attY[2*i] = numYES - n1attY[2*i+1];
 			}
-		}
-
-		for (Instance instance : instances) {
-			if (instance.classValue) {
-				for (int i=0; i<numAtt-1; i++) {
-					for (int j=i; j<numAtt; j++)
-						n2attY.get(i*numAtt+j)[instance.attValues.get(i)?1:0][instance.attValues.get(j)?1:0]++;
-					n1attY.get(i)[instance.attValues.get(i)?1:0]++;
-				}
-				n1attY.get(numAtt-1)[instance.attValues.get(numAtt-1)?1:0]++;
-			} else {
-				for (int i=0; i<numAtt-1; i++) {
-					for (int j=i; j<numAtt; j++)
-						n2attN.get(i*numAtt+j)[instance.attValues.get(i)?1:0][instance.attValues.get(j)?1:0]++;
-					n1attN.get(i)[instance.attValues.get(i)?1:0]++;
+		});
+
+		// n2attT[4*(a1*numAtt + a2) + 2*a1v + a2v], stored for both orders of a1 and a2
+		// step i fills the cells of pairs (i,j) and (j,i) for j > i only
+		final int[] n2attT = new int[4*numAtt*numAtt];
+		final int[] n2attY = new int[4*numAtt*numAtt];
+		ParallelFor.run(0, numAtt-1, parallel, new ParallelFor.Body() {
+			public void step(int i) {
+				for (int j=i+1; j<numAtt; j++) {
+					int t11 = columns.count(columns.att[i], columns.att[j]);
+					int y11 = columns.count(columns.att[i], columns.att[j], columns.yes);
+					int ij = 4*(i*numAtt+j);
+					n2attT[ij+3] = t11;
+					n2attT[ij+2] = n1attT[2*i+1] - t11;
+					n2attT[ij+1] = n1attT[2*j+1] - t11;
+					n2attT[ij]   = numTOT - n2attT[ij+1] - n2attT[ij+2] - n2attT[ij+3];
+					n2attY[ij+3] = y11;
+					n2attY[ij+2] = n1attY[2*i+1] - y11;
+					n2attY[ij+1] = n1attY[2*j+1] - y11;
+					n2attY[ij]   = numYES - n2attY[ij+1] - n2attY[ij+2] - n2attY[ij+3];
+					int ji = 4*(j*numAtt+i);
+					for (int k=0; k<2; k++) // values of i
+						for (int l=0; l<2; l++) { // values of j
+							n2attT[ji+2*l+k] = n2attT[ij+2*k+l];
+							n2attY[ji+2*l+k] = n2attY[ij+2*k+l];
+						}
 				}
-				n1attN.get(numAtt-1)[instance.attValues.get(numAtt-1)?1:0]++;
 			}
-		}
-
-		int numTOT = numYES + numNO;
-		for (int i=0; i<numAtt; i++)
-			for (int j=0; j<2; j++)
-				n1attT.get(i)[j] = n1attY.get(i)[j] + n1attN.get(i)[j];
-		for (int i=0; i<numAtt-1; i++)
-			for (int j=i; j<numAtt; j++)
-				for (int k=0; k<2; k++) // values of i
-					for (int l=0; l<2; l++) // values of j
-						n2attT.get(i*numAtt+j)[k][l] =
-						n2attY.get(i*numAtt+j)[k][l] + n2attN.get(i*numAtt+j)[k][l];
+		});
 
 		// We have all the necessary numbers from the dataset
+		// Now the entropy of every part, each computed only once
+
+		final float[] h1att = new float[2*numAtt];
+		for (int i=0; i<2*numAtt; i++)
+			h1att[i] = entropy(n1attY[i], n1attT[i]-n1attY[i], n1attT[i]);
+		final float[] h2att = new float[4*numAtt*numAtt];
+		ParallelFor.run(0, numAtt, parallel, new ParallelFor.Body() {
+			public void step(int i) {
+				for (int j=0; j<numAtt; j++)
+					if (i != j)
+						for (int kl=4*(i*numAtt+j); kl<4*(i*numAtt+j)+4; kl++)
+							h2att[kl] = entropy(n2attY[kl], n2attT[kl]-n2attY[kl], n2attT[kl]);
+			}
+		});
 
-		float pY = ((float) numYES) / numTOT;
-		float pN = ((float) numNO) / numTOT;
-		float h0att = 0;
-		if (pY > 0) h0att -= ( pY * (Math.log(pY) / Math.log(2)) );
-		if (pN > 0) h0att -= ( pN * (Math.log(pN) / Math.log(2)) );
+		final float h0att = entropy(numYES, numNO, numTOT);
 
-		float best = (float) 0.001;
-		int bestpoz = -1;
-		float bestpozowninfogain = (float) 0.001;
+		// Every a1 is evaluated on its own, into current[a1] and owninfogain[a1]
+		final float[] current = new float[numAtt];
+		final float[] owninfogain = new float[numAtt];
+		ParallelFor.run(0, numAtt, parallel, new ParallelFor.Body() {
+			public void step(int a1) {
 
-		for (int a1=0; a1<numAtt; a1++) {
-
-		// optAtt: a1values -> attributes
-		// optAtt( a1v ) = a2
-		// where a2 is optimal for splitting dataset_a1v
-		ArrayList<Integer> optAtt = new ArrayList<Integer>(2); // values of a1
-		for (int a1v=0; a1v<2; a1v++) { // values of a1
-
-			pY = n1attT.get(a1)[a1v] == 0?0:
-				((float) n1attY.get(a1)[a1v]) / n1attT.get(a1)[a1v];
-			pN = n1attT.get(a1)[a1v] == 0?0:
-				((float) n1attN.get(a1)[a1v]) / n1attT.get(a1)[a1v];
-			float h1att = 0;
-			if (pY > 0) h1att -= ( pY * (Math.log(pY) / Math.log(2)) );
-			if (pN > 0) h1att -= ( pN * (Math.log(pN) / Math.log(2)) );
-
-			float best1 = (float) 0.001;
-			int bestpoz1 = -1;
-			for (int a2=0; a2<numAtt; a2++)
-			if (a2 != a1) {
-				float current1 = h1att;
-				for (int a2v=0; a2v<2; a2v++) { // values of a2
-					if (a1<a2) {
-						pY = n2attT.get(a1*numAtt+a2)[a1v][a2v] == 0?0:
-							((float) n2attY.get(a1*numAtt+a2)[a1v][a2v]) / n2attT.get(a1*numAtt+a2)[a1v][a2v];
-						pN = n2attT.get(a1*numAtt+a2)[a1v][a2v] == 0?0:
-							((float) n2attN.get(a1*numAtt+a2)[a1v][a2v]) / n2attT.get(a1*numAtt+a2)[a1v][a2v];
-					} else {
-						pY = n2attT.get(a2*numAtt+a1)[a2v][a1v] == 0?0:
-							((float) n2attY.get(a2*numAtt+a1)[a2v][a1v]) / n2attT.get(a2*numAtt+a1)[a2v][a1v];
-						pN = n2attT.get(a2*numAtt+a1)[a2v][a1v] == 0?0:
-							((float) n2attN.get(a2*numAtt+a1)[a2v][a1v]) / n2attT.get(a2*numAtt+a1)[a2v][a1v];
+			// optAtt[ a1v ] = a2
+			// where a2 is optimal for splitting dataset_a1v
+			int[] optAtt = new int[2];
+			for (int a1v=0; a1v<2; a1v++) { // values of a1
+				float best1 = (float) 0.001;
+				int bestpoz1 = -1;
+				for (int a2=0; a2<numAtt; a2++)
+				if (a2 != a1) {
+					float current1 = h1att[2*a1+a1v];
+					for (int a2v=0; a2v<2; a2v++) { // values of a2
+						int cell = 4*(a1*numAtt+a2) + 2*a1v + a2v;
+						float pA2VgA1V = 0;
+						if (n1attT[2*a1+a1v] != 0)
+							pA2VgA1V = ((float) n2attT[cell]) / n1attT[2*a1+a1v];
+						current1 -= pA2VgA1V * h2att[cell];
 					}
-					float h2att = 0;
-					if (pY > 0) h2att -= ( pY * (Math.log(pY) / Math.log(2)) );
-					if (pN > 0) h2att -= ( pN * (Math.log(pN) / Math.log(2)) );
-					float pA2VgA1V = 0;
-					if (n1attT.get(a1)[a1v] != 0) {
-						if (a1<a2) pA2VgA1V = ((float) n2attT.get(a1*numAtt+a2)[a1v][a2v]) / n1attT.get(a1)[a1v];
-						else	   pA2VgA1V = ((float) n2attT.get(a2*numAtt+a1)[a2v][a1v]) / n1attT.get(a1)[a1v];
+					if (current1>best1) {
+						best1 = current1; bestpoz1 = a2;
 					}
-					current1 -= pA2VgA1V * h2att;
-				}
-				if (current1>best1) {
-					best1 = current1; bestpoz1 = a2;
 				}
-			}
-
-			optAtt.add(bestpoz1);
-		}
 
-		float current = h0att;
-		// We have optAtt: a1values -> attributes
-		// For each a1v and a2v    where a2 = optAtt( a1v )
-		// Subtract p( a1v,a2v ) * entropy( dataset_a1v,a2v )
-		for (int a1v=0; a1v<2; a1v++) { // values of a1
-			int a2 = optAtt.get(a1v);
-			if (a2 == -1) {
-				pY = n1attT.get(a1)[a1v] == 0?0:
-					((float) n1attY.get(a1)[a1v]) / n1attT.get(a1)[a1v];
-				pN = n1attT.get(a1)[a1v] == 0?0:
-					((float) n1attN.get(a1)[a1v]) / n1attT.get(a1)[a1v];
-				float h2att = 0;
-				if (pY > 0) h2att -= ( pY * (Math.log(pY) / Math.log(2)) );
-				if (pN > 0) h2att -= ( pN * (Math.log(pN) / Math.log(2)) );
-				float pA1V = ((float) n1attT.get(a1)[a1v]) / numTOT;
-				current -= pA1V * h2att;
-			}
-			else
-			for (int a2v=0; a2v<2; a2v++) { // values of a2
-				if (a1<a2) {
-					pY = n2attT.get(a1*numAtt+a2)[a1v][a2v] == 0?0:
-						((float) n2attY.get(a1*numAtt+a2)[a1v][a2v]) / n2attT.get(a1*numAtt+a2)[a1v][a2v];
-					pN = n2attT.get(a1*numAtt+a2)[a1v][a2v] == 0?0:
-						((float) n2attN.get(a1*numAtt+a2)[a1v][a2v]) / n2attT.get(a1*numAtt+a2)[a1v][a2v];
-				} else {
-					pY = n2attT.get(a2*numAtt+a1)[a2v][a1v] == 0?0:
-						((float) n2attY.get(a2*numAtt+a1)[a2v][a1v]) / n2attT.get(a2*numAtt+a1)[a2v][a1v];
-					pN = n2attT.get(a2*numAtt+a1)[a2v][a1v] == 0?0:
-						((float) n2attN.get(a2*numAtt+a1)[a2v][a1v]) / n2attT.get(a2*numAtt+a1)[a2v][a1v];
-				}
-				float h2att = 0;
-				if (pY > 0) h2att -= ( pY * (Math.log(pY) / Math.log(2)) );
-				if (pN > 0) h2att -= ( pN * (Math.log(pN) / Math.log(2)) );
-				float pA1VA2V = 0;
-				if (a1<a2) pA1VA2V = ((float) n2attT.get(a1*numAtt+a2)[a1v][a2v]) / numTOT;
-				else	   pA1VA2V = ((float) n2attT.get(a2*numAtt+a1)[a2v][a1v]) / numTOT;
-				current -= pA1VA2V * h2att;
+				optAtt[a1v] = bestpoz1;
 			}
-		}
 
-		if (current > best) {
-			best = current; bestpoz = a1;
-			bestpozowninfogain = h0att;
+			float currenta1 = h0att;
+			// We have optAtt: a1values -> attributes
+			// For each a1v and a2v    where a2 = optAtt( a1v )
+			// Subtract p( a1v,a2v ) * entropy( dataset_a1v,a2v )
 			for (int a1v=0; a1v<2; a1v++) { // values of a1
-				pY = n1attT.get(a1)[a1v] == 0?0:
-					((float) n1attY.get(a1)[a1v]) / n1attT.get(a1)[a1v];
-				pN = n1attT.get(a1)[a1v] == 0?0:
-					((float) n1attN.get(a1)[a1v]) / n1attT.get(a1)[a1v];
-				float h2att = 0;
-				if (pY > 0) h2att -= ( pY * (Math.log(pY) / Math.log(2)) );
-				if (pN > 0) h2att -= ( pN * (Math.log(pN) / Math.log(2)) );
-				float pA1V = ((float) n1attT.get(a1)[a1v]) / numTOT;
-				bestpozowninfogain -= pA1V * h2att;
+				int a2 = optAtt[a1v];
+				if (a2 == -1) {
+					float pA1V = ((float) n1attT[2*a1+a1v]) / numTOT;
+					currenta1 -= pA1V * h1att[2*a1+a1v];
+				}
+				else
+				for (int a2v=0; a2v<2; a2v++) { // values of a2
+					int cell = 4*(a1*numAtt+a2) + 2*a1v + a2v;
+					float pA1VA2V = ((float) n2attT[cell]) / numTOT;
+					currenta1 -= pA1VA2V * h2att[cell];
+				}
 			}
-		} else
-		if (current - best + 0.00001 > 0 && current - best - 0.00001 < 0) { // current == best
+			current[a1] = currenta1;
+
 			float a1owninfogain = h0att;
 			for (int a1v=0; a1v<2; a1v++) { // values of a1
-				pY = n1attT.get(a1)[a1v] == 0?0:
-					((float) n1attY.get(a1)[a1v]) / n1attT.get(a1)[a1v];
-				pN = n1attT.get(a1)[a1v] == 0?0:
-					((float) n1attN.get(a1)[a1v]) / n1attT.get(a1)[a1v];
-				float h2att = 0;
-				if (pY > 0) h2att -= ( pY * (Math.log(pY) / Math.log(2)) );
-				if (pN > 0) h2att -= ( pN * (Math.log(pN) / Math.log(2)) );
-				float pA1V = ((float) n1attT.get(a1)[a1v]) / numTOT;
-				a1owninfogain -= pA1V * h2att;
-			}
-			if (a1owninfogain > bestpozowninfogain) {
-				bestpoz = a1;
-				bestpozowninfogain = a1owninfogain;
+				float pA1V = ((float) n1attT[2*a1+a1v]) / numTOT;
+				a1owninfogain -= pA1V * h1att[2*a1+a1v];
 			}
-		}
+			owninfogain[a1] = a1owninfogain;
+
+			}
+		});
+
+		float best = (float) 0.001;
+		int bestpoz = -1;
+		float bestpozowninfogain = (float) 0.001;
 
+		for (int a1=0; a1<numAtt; a1++) {
+			if (current[a1] > best) {
+				best = current[a1]; bestpoz = a1;
+				bestpozowninfogain = owninfogain[a1];
+			} else
+			if (current[a1] - best + 0.00001 > 0 && current[a1] - best - 0.00001 < 0) { // current == best
+				if (owninfogain[a1] > bestpozowninfogain) {
+					bestpoz = a1;
+					bestpozowninfogain = owninfogain[a1];
+				}
+			}
 		}
 
 		return bestpoz;
 	}
 
+	/**
+	 * Decides whether the split search should be spread over the fork/join pool
+	 * @return True iff instances times attributes reaches parallelThreshold
+	 */
+	private boolean runInParallel() {
+		return ((long) size()) * attributes.size() >= parallelThreshold;
+	}
+
+	/**
+	 * Binary entropy of a part of the dataset
+	 * @param y		Number of YES instances in the part
+	 * @param n		Number of NO instances in the part
+	 * @param t		Number of all instances in the part
+	 * @return		The entropy, zero for an empty part
+	 */
+	private static float entropy(int y, int n, int t) {
+		float pY = t == 0?0: ((float) y) / t;
+		float pN = t == 0?0: ((float) n) / t;
+		float h = 0;
+		if (pY > 0) h -= ( pY * (Math.log(pY) / Math.log(2)) );
+		if (pN > 0) h -= ( pN * (Math.log(pN) / Math.log(2)) );
+		return h;
+	}
+
 	/**
 	 * Computes which attribute is the best for <br>
 	 * splitting the dataset based on a simple heuristic
@@ -760,7 +1058,7 @@ public class Dataset {
 	 * 		   or (-1) if there is no attribute good for splitting
 	 */
 	protected int heuristicSplit() {
-		assert(instances.size() == numYES + numNO);
+		assert(totalWeight() == numYES + numNO);
 		assert(numYES > 0 && numNO > 0);
 		assert(attributes.size() >= 2);
 
@@ -779,15 +1077,27 @@ public class Dataset {
 			}
 		}
 
-		for (Instance instance : instances) {
-			for (int i=0; i<attributes.size(); i++)
-				numTOTatt.get(i)[instance.attValues.get(i)?1:0]++;
-			if (instance.classValue) {
-				for (int i=0; i<attributes.size(); i++)
-					numYESatt.get(i)[instance.attValues.get(i)?1:0]++;
-			} else {
+		if (mappedRows != null) { // counted over the columns instead
+			Columns columns = columns(runInParallel());
+			for (int i=0; i<attributes.size(); i++) {
+				numTOTatt.get(i)[1] = columns.count(columns.att[i]);
+				numYESatt.get(i)[1] = columns.count(columns.att[i], columns.yes);
+				numNOatt.get(i)[1] = numTOTatt.get(i)[1] - numYESatt.get(i)[1];
+				numTOTatt.get(i)[0] = numYES + numNO - numTOTatt.get(i)[1];
+				numYESatt.get(i)[0] = numYES - numYESatt.get(i)[1];
+				numNOatt.get(i)[0] = numNO - numNOatt.get(i)[1];
+			}
+		} else {
+			for (Instance instance : instances) {
 				for (int i=0; i<attributes.size(); i++)
-					numNOatt.get(i)[instance.attValues.get(i)?1:0]++;
+					numTOTatt.get(i)[instance.attValues.get(i)?1:0] += instance.weight;
+				if (instance.classValue) {
+					for (int i=0; i<attributes.size(); i++)
+						numYESatt.get(i)[instance.attValues.get(i)?1:0] += instance.weight;
+				} else {
+					for (int i=0; i<attributes.size(); i++)
+						numNOatt.get(i)[instance.attValues.get(i)?1:0] += instance.weight;
+				}
 			}
 		}
 
@@ -826,48 +1136,92 @@ public class Dataset {
 	}
 
 	/** Creates an arff file with the dataset in the Attribute-Relation File Format <br>
-	 *  Location: results/datasets/filename.arff
+	 *  Location: results/datasets/filename.arff (filename.arff.gz if gzipFiles) <br>
+	 *  Whole rows are encoded into a byte buffer written through a file channel
 	 * @param filename The name of the arff file
 	 * @param game     Game instance
 	 * @param estimate Estimate size of state space
 	 * */
 	public void arffFile(String filename, Game game, int estimate) {
+		load();
 		File directory = new File("results/datasets/");
 		if (!directory.exists())
 			directory.mkdirs();
-		File outputFile = new File("results/datasets/"+filename+".arff");
 		String nl = System.getProperty("line.separator");
 
-        try(BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
-        	writer.write("% AUTHOR:           Viktor Toman"+nl);
-			writer.write("% FILE:             "+filename+nl);
-        	writer.write("% STATES ESTIMATED: "+estimate+nl);
-        	writer.write("% STATES GENERATED: "+game.stateSize+nl);
-        	writer.write("% STATEVARP1:       "+game.varStateP1no()+nl);
-        	writer.write("% STATEVARP2:       "+game.varStateP2no()+nl);
-        	writer.write("% ACTIONVARP1:      "+game.varActionP1no()+nl);
-        	writer.write("% ACTIONVARP2:      "+game.varActionP2no()+nl);
-        	writer.write("% PLAYER:           "+player+nl);
-        	writer.write("% OBJECTIVE:        "+objective+nl);
-        	writer.write("% NUMYES:           "+numYES+nl);
-        	writer.write("% NUMNO:            "+numNO+nl);
-        	writer.write("% NUMTOT:           "+((int)(numNO+numYES))+nl);
-        	writer.write("@RELATION strategy"+nl+nl);
-
-        	for (int i=0; i<attributes.size(); i++) {
-            	writer.write("@ATTRIBUTE \""+attributes.get(i)+"\" {0,1}"+nl);
-        	}
-        	writer.write("@ATTRIBUTE \"class\" {yes,no}"+nl+nl);
-
-        	writer.write("@DATA"+nl);
-        	for (int i=0; i<instances.size(); i++) {
-        		for (int j=0; j<instances.get(i).attValues.size(); j++)
-        			writer.write((instances.get(i).attValues.get(j)?1:0)+",");
-        		writer.write((instances.get(i).classValue?"yes":"no")+nl);
-        	}
-        } catch (Exception e) {
-        	System.out.println(e);
-        }
+		StringBuilder header = new StringBuilder();
+		header.append("% AUTHOR:           Viktor Toman"+nl);
+		header.append("% FILE:             "+filename+nl);
+		header.append("% STATES ESTIMATED: "+estimate+nl);
+		header.append("% STATES GENERATED: "+game.stateSize+nl);
+		header.append("% STATEVARP1:       "+game.varStateP1no()+nl);
+		header.append("% STATEVARP2:       "+game.varStateP2no()+nl);
+		header.append("% ACTIONVARP1:      "+game.varActionP1no()+nl);
+		header.append("% ACTIONVARP2:      "+game.varActionP2no()+nl);
+		header.append("% PLAYER:           "+player+nl);
+		header.append("% OBJECTIVE:        "+objective+nl);
+		header.append("% NUMYES:           "+numYES+nl);
+		header.append("% NUMNO:            "+numNO+nl);
+		header.append("% NUMTOT:           "+((int)(numNO+numYES))+nl);
+		header.append("@RELATION strategy"+nl+nl);
+		for (int i=0; i<attributes.size(); i++)
+			header.append("@ATTRIBUTE \""+attributes.get(i)+"\" {0,1}"+nl);
+		header.append("@ATTRIBUTE \"class\" {yes,no}"+nl+nl);
+		header.append("@DATA"+nl);
+
+		String path = "results/datasets/"+filename+".arff"+(gzipFiles?".gz":"");
+		try (FileChannel file = FileChannel.open(Paths.get(path),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			 WritableByteChannel channel = gzipFiles
+				 	?Channels.newChannel(new GZIPOutputStream(Channels.newOutputStream(file), 1 << 16))
+				 	:file) {
+			// one row is "v,v,...,v,yes" or "v,v,...,v,no" and the line separator
+			byte[] separator = nl.getBytes();
+			byte[] row = new byte[2*attributes.size() + 3 + separator.length];
+
+			byte[] bytes = header.toString().getBytes();
+			ByteBuffer buffer = ByteBuffer.allocate(Math.max(Math.max(1 << 16, row.length), bytes.length));
+			buffer.put(bytes);
+			for (int j=0; j<attributes.size(); j++)
+				row[2*j+1] = ',';
+			for (Instance instance : instances) {
+				int length = 2*attributes.size();
+				for (int j=0; j<attributes.size(); j++)
+					row[2*j] = instance.attValues.get(j)?(byte) '1':(byte) '0';
+				if (instance.classValue) {
+					row[length++] = 'y'; row[length++] = 'e'; row[length++] = 's';
+				} else {
+					row[length++] = 'n'; row[length++] = 'o';
+				}
+				for (byte b : separator)
+					row[length++] = b;
+				for (int w=0; w<instance.weight; w++) {
+					if (buffer.remaining() < length)
+						flush(channel, buffer);
+					buffer.put(row, 0, length);
+				}
+			}
+			flush(channel, buffer);
+		} catch (Exception e) {
+			System.out.println(e);
+		}
+	}
+
+	private static void flush(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	/** Creates the binary file of the dataset (the same rows as its ARFF file, about 16 times smaller) <br>
+	 *  Location: results/datasets/filename.bds, see BinaryFile
+	 * @param filename The name of the binary file
+	 * @param game     Game instance
+	 * @param estimate Estimate size of state space
+	 * */
+	public void binaryFile(String filename, Game game, int estimate) {
+		BinaryFile.write(this, filename, game, estimate);
 	}
 
 }
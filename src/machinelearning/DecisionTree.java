@@ -5,7 +5,12 @@ import java.io.File;
 import java.io.FileWriter;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import util.Pair;
 
@@ -22,88 +27,338 @@ public class DecisionTree {
 	public int lookaheadFiredUp;
 	public int heuristicFiredUp;
 	public ArrayList<String> attNames;
+
+	private boolean uselookahead;
+	private boolean allowdisjunction;
+	private final long heapBudget; // heap (in bytes) the 'd'epth-first build may spend on unpacked pending datasets, 0 - unlimited
+	private final int samplingThreshold; // without disjunctions, nodes with at least this many instances sample their best atom
+	private final LearningSession session; // null if the tree is learned on its own
+	private final AtomicInteger lookaheads = new AtomicInteger(0);
+	private final AtomicInteger heuristics = new AtomicInteger(0);
 	
 	/**
-	 * Builds the decision tree using the improved ID3 algorithm
+	 * Builds the decision tree using the improved ID3 algorithm, <br>
+	 * independent subtrees are built in parallel
 	 * @param data				Dataset from which the decision tree is built
 	 * @param uselookahead		If not, we jump straight to the heuristic if stuck
 	 * @param allowdisjunction	False - only atoms as predicates, True - disjunctions allowed
 	 */
 	public DecisionTree(Dataset data, boolean uselookahead, boolean allowdisjunction) {
-		assert(data.instances.size() >= 1);
+		this(data, uselookahead, allowdisjunction, 'p');
+	}
+
+	/**
+	 * Builds the decision tree using the improved ID3 algorithm
+	 * @param data				Dataset from which the decision tree is built
+	 * @param uselookahead		If not, we jump straight to the heuristic if stuck
+	 * @param allowdisjunction	False - only atoms as predicates, True - disjunctions allowed
+	 * @param buildmode			'b'readth-first queue, 'p'arallel fork/join subtrees, <br>
+	 * 							'd'epth-first stack (keeps all the pending datasets unpacked)
+	 */
+	public DecisionTree(Dataset data, boolean uselookahead, boolean allowdisjunction, char buildmode) {
+		this(data, null, uselookahead, allowdisjunction, buildmode, 0, 0);
+	}
+
+	/**
+	 * Builds the decision tree using the improved ID3 algorithm, choosing the atoms of large nodes from samples
+	 * @param data				Dataset from which the decision tree is built
+	 * @param uselookahead		If not, we jump straight to the heuristic if stuck
+	 * @param allowdisjunction	False - only atoms as predicates, True - disjunctions allowed
+	 * @param buildmode			'b'readth-first queue, 'p'arallel fork/join subtrees, <br>
+	 * 							'd'epth-first stack (keeps all the pending datasets unpacked)
+	 * @param samplingThreshold	Without disjunctions, the nodes with at least this many instances <br>
+	 * 							choose their best atom from samples, 0 - always exact (see Dataset.bestInfoGains)
+	 */
+	public DecisionTree(Dataset data, boolean uselookahead, boolean allowdisjunction, char buildmode, int samplingThreshold) {
+		this(data, null, uselookahead, allowdisjunction, buildmode, 0, samplingThreshold);
+	}
+
+	/**
+	 * Builds the decision tree from the dataset of a learning session, <br>
+	 * reusing what the other trees of the session have already computed
+	 * @param session			Session shared by the trees learned from the same dataset
+	 * @param uselookahead		If not, we jump straight to the heuristic if stuck
+	 * @param allowdisjunction	False - only atoms as predicates, True - disjunctions allowed
+	 * @param buildmode			'b'readth-first queue, 'p'arallel fork/join subtrees, <br>
+	 * 							'd'epth-first stack (keeps all the pending datasets unpacked)
+	 */
+	public DecisionTree(LearningSession session, boolean uselookahead, boolean allowdisjunction, char buildmode) {
+		this(session.dataset, session, uselookahead, allowdisjunction, buildmode, 0, session.samplingThreshold);
+	}
+
+	/**
+	 * Builds the decision tree from the dataset of a learning session depth-first within a heap budget
+	 * @param session			Session shared by the trees learned from the same dataset
+	 * @param uselookahead		If not, we jump straight to the heuristic if stuck
+	 * @param allowdisjunction	False - only atoms as predicates, True - disjunctions allowed
+	 * @param buildmode			'b'readth-first queue, 'p'arallel fork/join subtrees, <br>
+	 * 							'd'epth-first stack (keeps at most heapBudget of pending datasets unpacked)
+	 * @param heapBudget		Heap (in bytes) the 'd'epth-first build may spend on unpacked pending datasets, 0 - unlimited
+	 */
+	public DecisionTree(LearningSession session, boolean uselookahead, boolean allowdisjunction, char buildmode, long heapBudget) {
+		this(session.dataset, session, uselookahead, allowdisjunction, buildmode, heapBudget, session.samplingThreshold);
+	}
+
+	private DecisionTree(Dataset data, LearningSession session, boolean uselookahead, boolean allowdisjunction, char buildmode,
+			long heapBudget, int samplingThreshold) {
+		data.unpack();
+		assert(data.size() >= 1);
 		assert(data.attributes.size() >= 1);
-		
+		assert(buildmode == 'b' || buildmode == 'p' || buildmode == 'd');
+		assert(heapBudget >= 0);
+		assert(samplingThreshold >= 0);
+
+		this.uselookahead = uselookahead;
+		this.allowdisjunction = allowdisjunction;
+		this.session = session;
+		this.heapBudget = heapBudget;
+		this.samplingThreshold = samplingThreshold;
 		root = new Node(data, null, 0);
-		numberOfNodes = 1;
-		numberOfInnerNodes = 0;
-		lookaheadFiredUp = 0;
-		heuristicFiredUp = 0;
+		if (session != null)
+			root.path = "";
 		attNames = new ArrayList<String>(data.attributes);
-		
-		LinkedList<Node> queue = new LinkedList<Node>();
-		queue.add(root);
-		
-		while (queue.size() > 0) {
-			Node current = queue.remove();
-			
-			HashSet<Pair<Boolean,Integer>> splitPredicate = null;
-			
-			if (current.dataset.numYES > 0 && current.dataset.numNO > 0) {
-				splitPredicate = current.dataset.bestInfoGain(allowdisjunction);
-				
-				if (splitPredicate == null && uselookahead) {
-					int LAsplit = current.dataset.bestInfoGainLA();
-					lookaheadFiredUp++;
-					if (LAsplit > -1) {
-						splitPredicate = new HashSet<Pair<Boolean,Integer>>();
-						splitPredicate.add(new Pair<Boolean,Integer>(true, LAsplit));
+
+		if (buildmode == 'b') {
+			LinkedList<Node> queue = new LinkedList<Node>();
+			queue.add(root);
+
+			while (queue.size() > 0) {
+				Node current = queue.remove();
+				if (expand(current))
+					queue.addAll(current.children);
+			}
+		} else if (buildmode == 'd') {
+			LinkedList<Node> stack = new LinkedList<Node>();
+			stack.push(root);
+
+			while (stack.size() > 0) {
+				Node current = stack.pop();
+				current.dataset.unpack();
+				if (expand(current)) {
+					// the smaller child waits, the larger one is processed first
+					Node first = current.children.get(0);
+					Node second = current.children.get(1);
+					if (first.dataset.size() < second.dataset.size()) {
+						first = current.children.get(1);
+						second = current.children.get(0);
 					}
+					stack.push(second);
+					stack.push(first);
+					if (heapBudget > 0)
+						packPending(stack);
 				}
-				
-				if (splitPredicate == null) {
-					int HeuristicSplit = current.dataset.heuristicSplit();
-					heuristicFiredUp++;
-					if (HeuristicSplit > -1) {
-						splitPredicate = new HashSet<Pair<Boolean,Integer>>();
-						splitPredicate.add(new Pair<Boolean,Integer>(true, HeuristicSplit));						
-					}
+			}
+		} else {
+			if (ForkJoinTask.inForkJoinPool())
+				new Subtree(root).invoke();
+			else
+				ForkJoinPool.commonPool().invoke(new Subtree(root));
+		}
+
+		lookaheadFiredUp = lookaheads.get();
+		heuristicFiredUp = heuristics.get();
+		numberOfInnerNodes = 0;
+		numberOfNodes = 0;
+		number();
+		if (session != null)
+			session.record(this, uselookahead, allowdisjunction);
+	}
+
+	/**
+	 * Chooses the predicate of a given node and splits its dataset, <br>
+	 * the node becomes either a leaf or an inner node with two new children <br>
+	 * Afterwards the node does not keep its dataset any longer
+	 * @param current	The node to be processed
+	 * @return			True iff the node became an inner node
+	 */
+	private boolean expand(Node current) {
+		HashSet<Pair<Boolean,Integer>> splitPredicate = null;
+
+		if (current.dataset.numYES > 0 && current.dataset.numNO > 0) {
+			if (session != null) {
+				LearningSession.Subtree known = session.subtree(current.path, uselookahead, allowdisjunction);
+				if (known != null) {
+					graft(current, known);
+					return false;
 				}
 			}
-			
-			if (splitPredicate == null) { // current becomes a leaf node
-				current.label = current.classification?"YES":"NO";
-			} else { // current becomes an inner node
-				numberOfInnerNodes++;
-				current.predicate = new HashSet<Pair<Boolean,Integer>>(splitPredicate.size());
-				for (Pair<Boolean,Integer> atom : splitPredicate)
-					current.predicate.add(new Pair<Boolean,Integer>(atom.first(), 
-							current.dataset.positions.get(atom.second())));
-				
-				StringBuilder newlabel = new StringBuilder("");
-				int size = 0;
-				for (int i=0; i<attNames.size(); i++)
-					for (Pair<Boolean,Integer> atom : current.predicate)
-						if (atom.second() == i) {
-							size++;
-							newlabel.append((size>1?"\n":"")+(atom.first()?"":"! ")+attNames.get(i));
-							break;
-						}
-				current.label = newlabel.toString();
-				
-				Pair<Dataset,Dataset> subdatasets = current.dataset.split(splitPredicate);
-				current.children = new ArrayList<Node>(2);
-				current.children.add(new Node(subdatasets.first(), current, numberOfNodes));
-				numberOfNodes++;
-				queue.add(current.children.get(0));
-				current.children.add(new Node(subdatasets.second(), current, numberOfNodes));
-				numberOfNodes++;
-				queue.add(current.children.get(1));
+
+			if (current.dataset.samples(samplingThreshold))
+				current.fired |= LearningSession.SAMPLING;
+			Pair<HashSet<Pair<Boolean,Integer>>,HashSet<Pair<Boolean,Integer>>> gains = (session == null)?
+					current.dataset.bestInfoGains(allowdisjunction, samplingThreshold):
+					session.gains(current.path, current.dataset, allowdisjunction);
+			splitPredicate = allowdisjunction?gains.second():gains.first();
+			if (splitPredicate != null && !splitPredicate.equals(gains.first()))
+				current.fired |= LearningSession.DISJUNCTION;
+
+			if (splitPredicate == null && uselookahead) {
+				int LAsplit = (session == null)?lookaheadSplit(current.dataset, 1, 0):
+						session.lookahead(current.path, current.dataset);
+				lookaheads.incrementAndGet();
+				current.fired |= LearningSession.LOOKAHEAD;
+				if (LAsplit > -1) {
+					splitPredicate = new HashSet<Pair<Boolean,Integer>>();
+					splitPredicate.add(new Pair<Boolean,Integer>(true, LAsplit));
+				}
 			}
-			
+
+			if (splitPredicate == null) {
+				int HeuristicSplit = (session == null)?current.dataset.heuristicSplit():
+						session.heuristic(current.path, current.dataset);
+				heuristics.incrementAndGet();
+				current.fired |= LearningSession.HEURISTIC;
+				if (HeuristicSplit > -1) {
+					splitPredicate = new HashSet<Pair<Boolean,Integer>>();
+					splitPredicate.add(new Pair<Boolean,Integer>(true, HeuristicSplit));
+				}
+			}
+		}
+
+		if (splitPredicate == null) { // current becomes a leaf node
+			current.label = current.classification?"YES":"NO";
 			current.dataset = null;
+			return false;
 		}
+
+		// current becomes an inner node
+		current.predicate = new HashSet<Pair<Boolean,Integer>>(splitPredicate.size());
+		for (Pair<Boolean,Integer> atom : splitPredicate)
+			current.predicate.add(new Pair<Boolean,Integer>(atom.first(),
+					current.dataset.positions.get(atom.second())));
+
+		StringBuilder newlabel = new StringBuilder("");
+		StringBuilder step = new StringBuilder(""); // the predicate as a part of a path
+		int size = 0;
+		for (int i=0; i<attNames.size(); i++)
+			for (Pair<Boolean,Integer> atom : current.predicate)
+				if (atom.second() == i) {
+					size++;
+					newlabel.append((size>1?"\n":"")+(atom.first()?"":"! ")+attNames.get(i));
+					step.append((atom.first()?"":"!")+i+",");
+					break;
+				}
+		current.label = newlabel.toString();
+
+		Pair<Dataset,Dataset> subdatasets = current.dataset.split(splitPredicate);
+		current.dataset = null;
+		current.children = new ArrayList<Node>(2);
+		current.children.add(new Node(subdatasets.first(), current, -1));
+		current.children.add(new Node(subdatasets.second(), current, -1));
+		if (session != null)
+			for (int i=0; i<2; i++)
+				current.children.get(i).path = current.path + step + "=" + i + ";";
+		return true;
 	}
-	
+
+	/**
+	 * @param data		Dataset of a node where no predicate has a good information gain
+	 * @param depth		Number of levels looked ahead, 1 - the classical lookahead
+	 * @param millis	Wall-clock budget in milliseconds of a lookahead deeper than 1, 0 - unlimited
+	 * @return			The attribute chosen by the lookahead, <br>
+	 * 					or (-1) if there is no attribute good for splitting
+	 */
+	static int lookaheadSplit(Dataset data, int depth, long millis) {
+		if (depth > 1) {
+			Lookahead lookahead = new Lookahead(data, depth, millis);
+			int LAsplit = lookahead.bestAttribute();
+			if (lookahead.completed())
+				return LAsplit;
+			// out of time, look one level ahead only
+		}
+		return data.bestInfoGainLA();
+	}
+
+	/**
+	 * Makes a given node a copy of a finished subtree of the learning session
+	 * @param current	The node, it does not keep its dataset any longer
+	 * @param subtree	The subtree, learned at the same path
+	 */
+	private void graft(Node current, LearningSession.Subtree subtree) {
+		lookaheads.addAndGet(subtree.lookaheads);
+		heuristics.addAndGet(subtree.heuristics);
+		current.dataset = null;
+
+		LinkedList<Node> stack = new LinkedList<Node>();
+		LinkedList<Node> sources = new LinkedList<Node>();
+		stack.push(current);
+		sources.push(subtree.root);
+		while (stack.size() > 0) {
+			Node copy = stack.pop();
+			Node source = sources.pop();
+			copy.label = source.label;
+			copy.classification = source.classification;
+			copy.predicate = source.predicate;
+			copy.fired = source.fired;
+			copy.path = source.path;
+			if (!source.isLeaf()) {
+				copy.children = new ArrayList<Node>(2);
+				for (Node child : source.children) {
+					Node childcopy = new Node(null, copy, -1);
+					copy.children.add(childcopy);
+					stack.push(childcopy);
+					sources.push(child);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Packs the datasets waiting on the stack until they fit into heapBudget, <br>
+	 * starting with those that wait the longest (the top of the stack is left as is)
+	 * @param stack		Stack of the depth-first build
+	 */
+	private void packPending(LinkedList<Node> stack) {
+		long pending = 0;
+		for (Node node : stack)
+			pending += node.dataset.estimatedBytes();
+
+		Iterator<Node> it = stack.descendingIterator();
+		while (pending > heapBudget && it.hasNext()) {
+			Node node = it.next();
+			if (node == stack.peek()) break;
+			pending -= node.dataset.estimatedBytes();
+			node.dataset.pack();
+			pending += node.dataset.estimatedBytes();
+		}
+	}
+
+	/**
+	 * Numbers the nodes in the breadth-first order and counts them
+	 */
+	private void number() {
+		LinkedList<Node> queue = new LinkedList<Node>();
+		queue.add(root);
+		while (queue.size() > 0) {
+			Node current = queue.remove();
+			current.id = numberOfNodes;
+			numberOfNodes++;
+			if (!current.isLeaf()) {
+				numberOfInnerNodes++;
+				queue.addAll(current.children);
+			}
+		}
+	}
+
+	/**
+	 * Builds the subtree of a given node, the subtrees of the two children are forked
+	 */
+	private class Subtree extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Node node;
+
+		private Subtree(Node node) {
+			this.node = node;
+		}
+
+		@Override
+		protected void compute() {
+			if (expand(node))
+				invokeAll(new Subtree(node.children.get(0)), new Subtree(node.children.get(1)));
+		}
+	}
+
 	/**
 	 * Classifies a given sample using this tree
 	 * @param sample 	The sample to be classified
@@ -130,6 +385,13 @@ public class DecisionTree {
 		return current.classification;
 	}
 	
+	/**
+	 * @return This tree flattened into arrays, classifying bitvector samples
+	 */
+	public CompiledTree compile() {
+		return new CompiledTree(this);
+	}
+
 	/**
 	 * @return The decision tree as a string
 	 */
@@ -194,12 +456,16 @@ public class DecisionTree {
 		HashSet<Pair<Boolean,Integer>> predicate;
 		ArrayList<Node> children;
 		Node parent;
+		String path; // predicates and branches from the root, kept only within a learning session
+		byte fired; // what fired up when choosing the predicate, see LearningSession
 		
 		private Node(Dataset dataset, Node parent, int id) {
 			this.id = id;
 			this.label = null;
 			this.dataset = dataset;
-			if (dataset.instances.size() == 0)
+			if (dataset == null) // copied later from a finished subtree
+				classification = null;
+			else if (dataset.size() == 0)
 				classification = parent.classification;
 			else classification = (dataset.numYES > dataset.numNO);
 			predicate = null;
@@ -14,6 +14,7 @@ public class Instance {
 	
 	public ArrayList<Boolean> attValues;
 	public Boolean classValue;
+	public int weight; // number of identical instances this one stands for
 	
 	/** 
 	 * Constructor which creates an instance from given values and yes/no information
@@ -25,6 +26,7 @@ public class Instance {
 		this.attValues.addAll(attValues.first());
 		this.attValues.addAll(attValues.second());
 		this.classValue = classValue;
+		this.weight = 1;
 	}
 	
 	/**
@@ -35,6 +37,18 @@ public class Instance {
 	public Instance(ArrayList<Boolean> attValues, Boolean classValue) {
 		this.attValues = new ArrayList<Boolean>(attValues);
 		this.classValue = classValue;
+		this.weight = 1;
+	}
+	
+	/**
+	 * Constructor which creates an instance standing for a given number of copies of a given instance
+	 * @param source	Source instance, its values are shared
+	 * @param weight	Number of the copies
+	 */
+	Instance(Instance source, int weight) {
+		this.attValues = source.attValues;
+		this.classValue = source.classValue;
+		this.weight = weight;
 	}
 	
 	/** 
@@ -60,6 +74,7 @@ public class Instance {
 		}
 		this.attValues.trimToSize();
 		this.classValue = source.classValue;
+		this.weight = source.weight;
 	}
 	
 }
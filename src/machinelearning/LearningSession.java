@@ -0,0 +1,258 @@
+package machinelearning;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import util.Pair;
+
+/**
+ * Computations shared by the decision trees learned from the same dataset <br>
+ * A node is identified by its path from the root (the predicates and the branches taken), <br>
+ * so the same path always leads to the same subset of the instances. <br>
+ * Per path the session remembers the choices of the splitting predicate, <br>
+ * and the finished subtrees together with what fired up in them. <br>
+ * A subtree learned with other flags is reused iff the flags would not change any choice in it. <br>
+ * All the trees of a session look equally far ahead, so the lookahead choices are shared too. <br>
+ * The trees without disjunctions choose the atoms of the nodes with at least samplingThreshold instances <br>
+ * from samples, these choices are kept apart from the exact ones of DT+ (and no subtree of DT+ is reused there).
+ * @author vtoman - Viktor Toman
+ * viktor.toman@ist.ac.at
+ *
+ */
+public class LearningSession {
+
+	public final Dataset dataset;
+	public final int lookaheadDepth;    // levels the lookahead looks ahead, 1 - the classical lookahead
+	public final long lookaheadMillis;  // wall-clock budget of one lookahead deeper than 1, 0 - unlimited
+	public final int samplingThreshold; // nodes with at least this many instances sample their best atom, 0 - never
+
+	// what fired up when choosing the predicate of a node
+	static final byte DISJUNCTION = 1; // a disjunction was chosen over the best atom
+	static final byte LOOKAHEAD = 2;
+	static final byte HEURISTIC = 4;
+	static final byte SAMPLING = 8; // the node is large enough for the trees without disjunctions to sample
+
+	private final ConcurrentHashMap<String,Pair<HashSet<Pair<Boolean,Integer>>,HashSet<Pair<Boolean,Integer>>>> gains;
+	private final ConcurrentHashMap<String,Integer> lookaheads;
+	private final ConcurrentHashMap<String,Integer> heuristics;
+	private final ConcurrentHashMap<String,Subtree> subtrees;
+
+	/**
+	 * @param dataset	Dataset from which all the decision trees of this session are built
+	 */
+	public LearningSession(Dataset dataset) {
+		this(dataset, 1, 0);
+	}
+
+	/**
+	 * @param dataset			Dataset from which all the decision trees of this session are built
+	 * @param lookaheadDepth	Number of levels the lookahead looks ahead (at least 1), see Lookahead
+	 * @param lookaheadMillis	Wall-clock budget (in milliseconds) of one lookahead deeper than 1, 0 - unlimited <br>
+	 * 							(out of time, the lookahead looks one level ahead only)
+	 */
+	public LearningSession(Dataset dataset, int lookaheadDepth, long lookaheadMillis) {
+		this(dataset, lookaheadDepth, lookaheadMillis, 0);
+	}
+
+	/**
+	 * @param dataset			Dataset from which all the decision trees of this session are built
+	 * @param lookaheadDepth	Number of levels the lookahead looks ahead (at least 1), see Lookahead
+	 * @param lookaheadMillis	Wall-clock budget (in milliseconds) of one lookahead deeper than 1, 0 - unlimited
+	 * @param samplingThreshold	The trees without disjunctions choose the best atom of a node <br>
+	 * 							with at least this many instances from samples, 0 - always exact (see Dataset.bestInfoGains)
+	 */
+	public LearningSession(Dataset dataset, int lookaheadDepth, long lookaheadMillis, int samplingThreshold) {
+		assert(lookaheadDepth >= 1);
+		assert(samplingThreshold >= 0);
+		this.dataset = dataset;
+		this.lookaheadDepth = lookaheadDepth;
+		this.lookaheadMillis = lookaheadMillis;
+		this.samplingThreshold = samplingThreshold;
+		this.gains = new ConcurrentHashMap<String,Pair<HashSet<Pair<Boolean,Integer>>,HashSet<Pair<Boolean,Integer>>>>();
+		this.lookaheads = new ConcurrentHashMap<String,Integer>();
+		this.heuristics = new ConcurrentHashMap<String,Integer>();
+		this.subtrees = new ConcurrentHashMap<String,Subtree>();
+	}
+
+	/**
+	 * Builds DT+, DT and DTnl (in this order) sharing this session <br>
+	 * (the routines build them one by one instead, to time and check every tree on its own)
+	 * @param buildmode		Build mode of every tree, see DecisionTree
+	 * @param heapBudget	Heap budget of every 'd'epth-first build, see DecisionTree
+	 * @param concurrent	False - one after another, True - the three trees at once
+	 * @return				The three decision trees
+	 */
+	public DecisionTree[] buildAll(final char buildmode, final long heapBudget, boolean concurrent) {
+		final DecisionTree[] result = new DecisionTree[3];
+		final boolean[][] flags = {{true, true}, {true, false}, {false, false}};
+
+		if (!concurrent) {
+			for (int i=0; i<3; i++)
+				result[i] = new DecisionTree(this, flags[i][0], flags[i][1], buildmode, heapBudget);
+			return result;
+		}
+
+		final RecursiveAction[] tasks = new RecursiveAction[3];
+		for (int i=0; i<3; i++) {
+			final int variant = i;
+			tasks[i] = new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+				@Override
+				protected void compute() {
+					result[variant] = new DecisionTree(LearningSession.this, flags[variant][0], flags[variant][1], buildmode, heapBudget);
+				}
+			};
+		}
+		if (ForkJoinTask.inForkJoinPool())
+			ForkJoinTask.invokeAll(tasks);
+		else
+			ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+				@Override
+				protected void compute() {
+					invokeAll(tasks);
+				}
+			});
+		return result;
+	}
+
+	/**
+	 * @return The best atom and the best predicate of the node at a given path, see Dataset.bestInfoGains
+	 */
+	Pair<HashSet<Pair<Boolean,Integer>>,HashSet<Pair<Boolean,Integer>>> gains(String path, Dataset data, boolean allowdisjunction) {
+		if (!allowdisjunction && data.samples(samplingThreshold)) { // the sampled choices only
+			Pair<HashSet<Pair<Boolean,Integer>>,HashSet<Pair<Boolean,Integer>>> known = gains.get("~" + path);
+			if (known == null) {
+				known = data.bestInfoGains(false, samplingThreshold);
+				gains.putIfAbsent("~" + path, known);
+			}
+			return known;
+		}
+		Pair<HashSet<Pair<Boolean,Integer>>,HashSet<Pair<Boolean,Integer>>> known = gains.get("+" + path);
+		if (known == null && !allowdisjunction)
+			known = gains.get("-" + path);
+		if (known == null) {
+			known = data.bestInfoGains(allowdisjunction, samplingThreshold);
+			gains.putIfAbsent((allowdisjunction?"+":"-") + path, known);
+		}
+		return known;
+	}
+
+	/**
+	 * @return The attribute chosen by the lookahead at a given path, see DecisionTree.lookaheadSplit
+	 */
+	int lookahead(String path, Dataset data) {
+		Integer known = lookaheads.get(path);
+		if (known == null) {
+			known = DecisionTree.lookaheadSplit(data, lookaheadDepth, lookaheadMillis);
+			lookaheads.putIfAbsent(path, known);
+		}
+		return known;
+	}
+
+	/**
+	 * @return The attribute chosen by the heuristic at a given path, see Dataset.heuristicSplit
+	 */
+	int heuristic(String path, Dataset data) {
+		Integer known = heuristics.get(path);
+		if (known == null) {
+			known = data.heuristicSplit();
+			heuristics.putIfAbsent(path, known);
+		}
+		return known;
+	}
+
+	/**
+	 * Finds a finished subtree which the given flags would learn the same way
+	 * @param path				Path of the node from the root
+	 * @param uselookahead		Flag of the tree asking
+	 * @param allowdisjunction	Flag of the tree asking
+	 * @return					The subtree, or null if there is none
+	 */
+	Subtree subtree(String path, boolean uselookahead, boolean allowdisjunction) {
+		for (int i=0; i<4; i++) {
+			boolean la = (i < 2);
+			boolean disj = (i % 2 == 0);
+			Subtree subtree = subtrees.get(mode(la, disj) + path);
+			if (subtree == null) continue;
+			// disjunctions were not looked at in the subtree
+			if (!disj && allowdisjunction) continue;
+			// a disjunction won somewhere in the subtree
+			if (disj && !allowdisjunction && (subtree.fired & DISJUNCTION) != 0) continue;
+			// the atoms were counted exactly in the subtree where the asking tree samples
+			if (disj && !allowdisjunction && (subtree.fired & SAMPLING) != 0) continue;
+			// the lookahead was used where the heuristic is asked
+			if (la && !uselookahead && (subtree.fired & LOOKAHEAD) != 0) continue;
+			// the heuristic was used where the lookahead is asked
+			if (!la && uselookahead && (subtree.fired & HEURISTIC) != 0) continue;
+			return subtree;
+		}
+		return null;
+	}
+
+	/**
+	 * Remembers all the subtrees (rooted in inner nodes) of a finished decision tree
+	 * @param tree				The decision tree
+	 * @param uselookahead		Flag with which the tree was learned
+	 * @param allowdisjunction	Flag with which the tree was learned
+	 */
+	void record(DecisionTree tree, boolean uselookahead, boolean allowdisjunction) {
+		ArrayList<DecisionTree.Node> order = new ArrayList<DecisionTree.Node>();
+		LinkedList<DecisionTree.Node> queue = new LinkedList<DecisionTree.Node>();
+		queue.add(tree.root);
+		while (queue.size() > 0) {
+			DecisionTree.Node current = queue.remove();
+			order.add(current);
+			if (!current.isLeaf())
+				queue.addAll(current.children);
+		}
+
+		// children come after their parents in the breadth-first order
+		IdentityHashMap<DecisionTree.Node,Subtree> done = new IdentityHashMap<DecisionTree.Node,Subtree>();
+		String mode = mode(uselookahead, allowdisjunction);
+		for (int i=order.size()-1; i>=0; i--) {
+			DecisionTree.Node current = order.get(i);
+			Subtree subtree = new Subtree(current);
+			if (!current.isLeaf())
+				for (DecisionTree.Node child : current.children)
+					subtree.add(done.get(child));
+			done.put(current, subtree);
+			if (!current.isLeaf())
+				subtrees.putIfAbsent(mode + current.path, subtree);
+		}
+	}
+
+	private static String mode(boolean uselookahead, boolean allowdisjunction) {
+		return (uselookahead?"l":"-") + (allowdisjunction?"d":"-");
+	}
+
+	/**
+	 * Finished subtree with a summary of what fired up in it
+	 */
+	static class Subtree {
+		final DecisionTree.Node root;
+		byte fired;
+		int lookaheads;
+		int heuristics;
+
+		private Subtree(DecisionTree.Node root) {
+			this.root = root;
+			this.fired = root.fired;
+			this.lookaheads = ((root.fired & LOOKAHEAD) != 0)?1:0;
+			this.heuristics = ((root.fired & HEURISTIC) != 0)?1:0;
+		}
+
+		private void add(Subtree child) {
+			fired |= child.fired;
+			lookaheads += child.lookaheads;
+			heuristics += child.heuristics;
+		}
+	}
+
+}
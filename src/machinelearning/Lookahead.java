@@ -0,0 +1,238 @@
+package machinelearning;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lookahead over several levels for choosing the splitting attribute <br>
+ * The attribute a1 is scored by the entropy left after splitting by a1 <br>
+ * and then splitting each part optimally for further depth levels. <br>
+ * Depth 1 is the lookahead of Dataset.bestInfoGainLA. <br>
+ * Subsets are identified by the literals leading to them, their residual <br>
+ * entropies are memoized, and candidates that cannot beat the best one so far are pruned.
+ * @author vtoman - Viktor Toman
+ * viktor.toman@ist.ac.at
+ *
+ */
+class Lookahead {
+
+	private final Dataset dataset;
+	private final int depth;
+	private final long deadline;
+	private final Columns columns;
+	private final int numAtt;
+	private final ConcurrentHashMap<BitSet,Double> memo;
+	private volatile boolean timedout;
+
+	/**
+	 * @param dataset	Choose the attribute for splitting this dataset
+	 * @param depth		Number of levels looked ahead (at least 1)
+	 * @param millis	Wall-clock budget in milliseconds, 0 - unlimited
+	 */
+	Lookahead(Dataset dataset, int depth, long millis) {
+		assert(depth >= 1);
+		this.dataset = dataset;
+		this.depth = depth;
+		this.deadline = (millis > 0)?System.currentTimeMillis() + millis:Long.MAX_VALUE;
+		this.columns = dataset.columns(false);
+		this.numAtt = dataset.attributes.size();
+		this.memo = new ConcurrentHashMap<BitSet,Double>();
+		this.timedout = false;
+	}
+
+	/**
+	 * @return True iff the last search finished within the budget
+	 */
+	boolean completed() { return !timedout; }
+
+	/**
+	 * Computes which attribute is the best for splitting the dataset
+	 * @return The index of attribute which is best for splitting, <br>
+	 * 		   or (-1) if there is no attribute good for splitting
+	 */
+	int bestAttribute() {
+		assert(dataset.numYES > 0 && dataset.numNO > 0);
+		assert(numAtt >= 2);
+		if (dataset.numYES + dataset.numNO < 4) return -1;
+
+		final int numTOT = dataset.numYES + dataset.numNO;
+		final double h0 = entropy(dataset.numYES, numTOT);
+
+		// The most promising attributes (by their own information gain) go first
+		final double[] residual1 = oneLevel(columns.all, numTOT, dataset.numYES);
+		ArrayList<Integer> order = new ArrayList<Integer>(numAtt);
+		for (int a1=0; a1<numAtt; a1++)
+			order.add(a1);
+		Collections.sort(order, new Comparator<Integer>() {
+			public int compare(Integer x, Integer y) { return Double.compare(residual1[x], residual1[y]); }
+		});
+
+		// Smallest residual entropy found so far, shared by all the candidates
+		final AtomicLong bound = new AtomicLong(Double.doubleToLongBits(h0 - 0.001));
+		final double[] current = new double[numAtt];
+		final double[] owninfogain = new double[numAtt];
+		final Integer[] ordered = order.toArray(new Integer[numAtt]);
+		boolean parallel = ((long) columns.rows) * numAtt >= Dataset.parallelThreshold;
+
+		ParallelFor.run(0, numAtt, parallel, new ParallelFor.Body() {
+			public void step(int i) {
+				int a1 = ordered[i];
+				owninfogain[a1] = h0 - residual1[a1];
+				current[a1] = Double.NaN;
+
+				long[] mask1 = part(columns.all, a1, true);
+				long[] mask0 = part(columns.all, a1, false);
+				int t1 = columns.count(mask1);
+				int y1 = columns.count(mask1, columns.yes);
+				int t0 = numTOT - t1;
+				int y0 = dataset.numYES - y1;
+
+				double r = ((double) t0) / numTOT * residual(mask0, literals(a1, false), depth, t0, y0);
+				// pruned only if it cannot even tie with the best one
+				if (r > Double.longBitsToDouble(bound.get()) + 0.00001) return;
+				r += ((double) t1) / numTOT * residual(mask1, literals(a1, true), depth, t1, y1);
+				if (timedout) return;
+
+				current[a1] = h0 - r;
+				long old = bound.get();
+				while (r < Double.longBitsToDouble(old) && !bound.compareAndSet(old, Double.doubleToLongBits(r)))
+					old = bound.get();
+			}
+		});
+		if (timedout) return -1;
+
+		// The same scan and tie-breaking as in Dataset.bestInfoGainLA
+		double best = 0.001;
+		int bestpoz = -1;
+		double bestpozowninfogain = 0.001;
+		for (int a1=0; a1<numAtt; a1++) {
+			if (current[a1] > best) {
+				best = current[a1]; bestpoz = a1;
+				bestpozowninfogain = owninfogain[a1];
+			} else
+			if (current[a1] - best + 0.00001 > 0 && current[a1] - best - 0.00001 < 0) { // current == best
+				if (owninfogain[a1] > bestpozowninfogain) {
+					bestpoz = a1;
+					bestpozowninfogain = owninfogain[a1];
+				}
+			}
+		}
+
+		return bestpoz;
+	}
+
+	/**
+	 * Residual entropy of a subset after splitting it optimally for a given number of levels
+	 * @param mask		The subset
+	 * @param literals	Literals leading to the subset (2*attribute + value)
+	 * @param levels	Number of levels left
+	 * @param t			Number of instances in the subset
+	 * @param y			Number of YES instances in the subset
+	 * @return			The smallest residual entropy, or the entropy if no split helps
+	 */
+	private double residual(long[] mask, BitSet literals, int levels, int t, int y) {
+		double h = entropy(y, t);
+		if (levels == 0 || h == 0) return h;
+		if (System.currentTimeMillis() > deadline) timedout = true;
+		if (timedout) return 0;
+
+		BitSet key = (BitSet) literals.clone();
+		key.set(2*numAtt + levels);
+		Double known = memo.get(key);
+		if (known != null) return known;
+
+		final double[] residual1 = oneLevel(mask, t, y);
+		double bound = h - 0.001;
+		double best = h;
+
+		if (levels == 1) {
+			for (int a=0; a<numAtt; a++)
+				if (residual1[a] < bound) {
+					bound = residual1[a];
+					best = residual1[a];
+				}
+		} else {
+			ArrayList<Integer> order = new ArrayList<Integer>(numAtt);
+			for (int a=0; a<numAtt; a++)
+				if (!literals.get(2*a) && !literals.get(2*a+1))
+					order.add(a);
+			Collections.sort(order, new Comparator<Integer>() {
+				public int compare(Integer x, Integer z) { return Double.compare(residual1[x], residual1[z]); }
+			});
+
+			for (int a : order) {
+				long[] mask1 = part(mask, a, true);
+				int t1 = columns.count(mask1);
+				int t0 = t - t1;
+				if (t0 == 0 || t1 == 0) continue; // splits nothing
+				int y1 = columns.count(mask1, columns.yes);
+				int y0 = y - y1;
+
+				double r = ((double) t0) / t * residual(part(mask, a, false), with(literals, a, false), levels-1, t0, y0);
+				if (r >= bound) continue;
+				r += ((double) t1) / t * residual(mask1, with(literals, a, true), levels-1, t1, y1);
+				if (r < bound) {
+					bound = r;
+					best = r;
+					if (best == 0) break;
+				}
+			}
+		}
+
+		if (!timedout)
+			memo.put(key, best);
+		return best;
+	}
+
+	/**
+	 * Residual entropies of all the single-attribute splits of a subset
+	 * @param mask	The subset
+	 * @param t		Number of instances in the subset
+	 * @param y		Number of YES instances in the subset
+	 * @return		Residual entropy for every attribute
+	 */
+	private double[] oneLevel(long[] mask, int t, int y) {
+		double[] result = new double[numAtt];
+		for (int a=0; a<numAtt; a++) {
+			int t1 = columns.count(mask, columns.att[a]);
+			int y1 = columns.count(mask, columns.att[a], columns.yes);
+			result[a] = (((double) (t-t1)) * entropy(y-y1, t-t1) + ((double) t1) * entropy(y1, t1)) / t;
+		}
+		return result;
+	}
+
+	/**
+	 * @return The part of a subset where the attribute has the given value
+	 */
+	private long[] part(long[] mask, int attribute, boolean value) {
+		long[] result = new long[columns.words];
+		for (int w=0; w<columns.words; w++)
+			result[w] = mask[w] & (value?columns.att[attribute][w]:~columns.att[attribute][w]);
+		return result;
+	}
+
+	private BitSet literals(int attribute, boolean value) {
+		return with(new BitSet(2*numAtt + depth + 1), attribute, value);
+	}
+
+	private static BitSet with(BitSet literals, int attribute, boolean value) {
+		BitSet result = (BitSet) literals.clone();
+		result.set(2*attribute + (value?1:0));
+		return result;
+	}
+
+	/**
+	 * Binary entropy of a part with y YES instances out of t
+	 */
+	private static double entropy(int y, int t) {
+		if (t == 0 || y == 0 || y == t) return 0;
+		double pY = ((double) y) / t;
+		double pN = ((double) (t-y)) / t;
+		return -( pY * (Math.log(pY) / Math.log(2)) ) - ( pN * (Math.log(pN) / Math.log(2)) );
+	}
+
+}
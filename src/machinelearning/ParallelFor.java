@@ -0,0 +1,68 @@
+package machinelearning;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs independent iterations of a loop over the fork/join pool
+ * @author vtoman - Viktor Toman
+ * viktor.toman@ist.ac.at
+ *
+ */
+final class ParallelFor {
+
+	/**
+	 * Body of the loop, the iterations must not depend on each other
+	 */
+	interface Body {
+		void step(int i);
+	}
+
+	private ParallelFor() {}
+
+	/**
+	 * Runs body.step(i) for every i from the range [from, to)
+	 * @param from		First index
+	 * @param to		One past the last index
+	 * @param parallel	False - plain sequential loop, True - spread over the fork/join pool
+	 * @param body		The loop body
+	 */
+	static void run(int from, int to, boolean parallel, Body body) {
+		if (!parallel || to - from < 2) {
+			for (int i=from; i<to; i++)
+				body.step(i);
+			return;
+		}
+		Range range = new Range(from, to, body);
+		if (ForkJoinTask.inForkJoinPool())
+			range.invoke();
+		else
+			ForkJoinPool.commonPool().invoke(range);
+	}
+
+	private static class Range extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+		private final Body body;
+
+		private Range(int from, int to, Body body) {
+			this.from = from;
+			this.to = to;
+			this.body = body;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				body.step(from);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new Range(from, mid, body), new Range(mid, to, body));
+		}
+	}
+
+}
@@ -0,0 +1,344 @@
+package machinelearning;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Reorders the variables of the BDD of the YES instances by sifting (Rudell), on a node table of its own <br>
+ * (the reordering of JavaBDD 1.0b2 is not usable: its sifting throws, its window permutation does not terminate) <br>
+ * Every variable in turn, those with the most nodes first, is moved by swaps of neighbouring levels <br>
+ * through all the levels and left at the level where the BDD was the smallest, <br>
+ * a move in one direction stops when the BDD grows MAX_GROWTH times the smallest size seen in it. <br>
+ * Passes over all the variables are repeated while a pass makes the BDD smaller and the time budget lasts.
+ * @author vtoman - Viktor Toman
+ * viktor.toman@ist.ac.at
+ *
+ */
+final class Sifting {
+
+	private static final double MAX_GROWTH = 1.2;
+	private static final int ZERO = 0;
+	private static final int ONE = 1;
+	private static final int TERMINAL = -1; // variable of the terminals
+
+	private final int numVar;
+	private final long deadline;
+	final int[] level2var;
+	final int[] var2level;
+
+	// the nodes, NODE ints each, 0 and 1 are the terminals, the free ones are chained by NEXT
+	private static final int NODE = 5;
+	private static final int VAR = 0;
+	private static final int LOW = 1;
+	private static final int HIGH = 2;
+	private static final int REF = 3;  // parents (and the root), the terminals are never freed
+	private static final int NEXT = 4; // in the chain of a bucket of the unique table of the variable
+	private int[] nodes;
+	private int used = 2;
+	private int free = -1;
+	int size = 0;       // inner nodes
+
+	private final int[][] table; // unique table of every variable, buckets with chains of nodes
+	private final int[] count;   // nodes of every variable
+	private int[] scratch = new int[16];
+
+	/**
+	 * Builds the BDD of the YES instances in the order of the attributes
+	 * @param rows		Bit rows of the YES instances
+	 * @param numAtt	Number of attributes (variables)
+	 * @param budget	Time budget in seconds, of this build, the sifting and the JavaBDD build in the order found <br>
+	 * 					(the sifting stops three times as long before the end as this build took, <br>
+	 * 					as the nodes of JavaBDD are made two or three times slower)
+	 */
+	Sifting(long[] rows, int numAtt, double budget) {
+		long start = System.nanoTime();
+		this.numVar = numAtt;
+		this.level2var = new int[numAtt];
+		this.var2level = new int[numAtt];
+		for (int i=0; i<numAtt; i++) {
+			level2var[i] = i;
+			var2level[i] = i;
+		}
+
+		nodes = new int[1024*NODE];
+		for (int n=ZERO; n<=ONE; n++) {
+			nodes[n*NODE + VAR] = TERMINAL;
+			nodes[n*NODE + REF] = Integer.MAX_VALUE / 2;
+		}
+
+		table = new int[numAtt][];
+		count = new int[numAtt];
+		for (int v=0; v<numAtt; v++) {
+			table[v] = new int[16];
+			Arrays.fill(table[v], -1);
+		}
+
+		int rowWords = (numAtt + 63) >>> 6;
+		int yes = rows.length / rowWords;
+		int[] index = new int[yes];
+		for (int r=0; r<yes; r++)
+			index[r] = r;
+		int root = build(rows, rowWords, index, 0, yes, 0);
+		nodes[root*NODE + REF]++;
+		long built = System.nanoTime();
+		this.deadline = start + (long) (budget * 1000000000.0) - 3*(built - start);
+	}
+
+	/**
+	 * Sifts the variables pass after pass while a pass makes the BDD smaller and the time budget lasts
+	 * @return Number of passes
+	 */
+	int run() {
+		int passes = 0;
+		while (System.nanoTime() < deadline) {
+			int before = size;
+			pass();
+			passes++;
+			if (size >= before)
+				break;
+		}
+		return passes;
+	}
+
+	/**
+	 * Sifts every variable once, those with the most nodes first
+	 */
+	private void pass() {
+		Integer[] vars = new Integer[numVar];
+		for (int v=0; v<numVar; v++)
+			vars[v] = v;
+		Arrays.sort(vars, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return (count[a] != count[b])?Integer.compare(count[b], count[a]):Integer.compare(a, b);
+			}
+		});
+		for (Integer v : vars) {
+			if (System.nanoTime() >= deadline)
+				return;
+			sift(v);
+		}
+	}
+
+	/**
+	 * Moves a variable through all the levels (towards the nearer end first, <br>
+	 * then back to its level and towards the other end) and leaves it where the BDD was the smallest
+	 * @param v	The variable
+	 */
+	private void sift(int v) {
+		int start = var2level[v];
+		int level = start;
+		int best = size;
+		int bestLevel = level;
+		boolean downFirst = (level >= numVar / 2);
+		for (int direction=0; direction<2; direction++) {
+			boolean down = (direction == 0) == downFirst;
+			if (direction == 1) {
+				if (System.nanoTime() >= deadline)
+					break;
+				while (level < start)
+					swap(level++);
+				while (level > start)
+					swap(--level);
+			}
+			int limit = size; // the growth is bounded by the smallest size seen in this direction
+			while ((down?level < numVar-1:level > 0) && size <= MAX_GROWTH * limit && System.nanoTime() < deadline) {
+				if (down)
+					swap(level++);
+				else
+					swap(--level);
+				if (size < limit)
+					limit = size;
+				if (size < best) {
+					best = size;
+					bestLevel = level;
+				}
+			}
+		}
+		while (level < bestLevel)
+			swap(level++);
+		while (level > bestLevel)
+			swap(--level);
+		assert(size == best);
+	}
+
+	/**
+	 * Swaps the variables of two neighbouring levels, the nodes keep their functions (and so their ids)
+	 * @param i	The upper level, swapped with the level i+1
+	 */
+	private void swap(int i) {
+		int x = level2var[i];
+		int y = level2var[i+1];
+
+		// the x nodes depending on y out of their table,
+		// the others stay as they are (below y now)
+		if (scratch.length < count[x])
+			scratch = new int[Math.max(count[x], 2*scratch.length)];
+		int[] xs = scratch;
+		int dependent = 0;
+		int[] buckets = table[x];
+		for (int b=0; b<buckets.length; b++) {
+			int previous = -1;
+			for (int n=buckets[b]; n != -1; ) {
+				int following = nodes[n*NODE + NEXT];
+				if (nodes[nodes[n*NODE + LOW]*NODE + VAR] == y || nodes[nodes[n*NODE + HIGH]*NODE + VAR] == y) {
+					xs[dependent++] = n;
+					if (previous == -1)
+						buckets[b] = following;
+					else
+						nodes[previous*NODE + NEXT] = following;
+				} else
+					previous = n;
+				n = following;
+			}
+		}
+		count[x] -= dependent;
+
+		// a node depending on y becomes a y node with new x nodes as its children
+		for (int k=0; k<dependent; k++) {
+			int n = xs[k];
+			int f0 = nodes[n*NODE + LOW];
+			int f1 = nodes[n*NODE + HIGH];
+			int f00 = (nodes[f0*NODE + VAR] == y)?nodes[f0*NODE + LOW]:f0;
+			int f01 = (nodes[f0*NODE + VAR] == y)?nodes[f0*NODE + HIGH]:f0;
+			int f10 = (nodes[f1*NODE + VAR] == y)?nodes[f1*NODE + LOW]:f1;
+			int f11 = (nodes[f1*NODE + VAR] == y)?nodes[f1*NODE + HIGH]:f1;
+			int a = mk(x, f00, f10);
+			nodes[a*NODE + REF]++;
+			int b = mk(x, f01, f11);
+			nodes[b*NODE + REF]++;
+			deref(f0);
+			deref(f1);
+			nodes[n*NODE + LOW] = a;
+			nodes[n*NODE + HIGH] = b;
+			nodes[n*NODE + VAR] = y;
+			insert(y, n);
+		}
+
+		level2var[i] = y;
+		level2var[i+1] = x;
+		var2level[y] = i;
+		var2level[x] = i+1;
+	}
+
+	/**
+	 * @param rows		Bit rows of the YES instances
+	 * @param rowWords	Words of one row
+	 * @param index		Rows of the blocks, a block is partitioned in place
+	 * @param from		First position of the block in index
+	 * @param to		One past its last position
+	 * @param level		Level (variable) of the node
+	 * @return			The node of the rows of the block (see BinaryDecisionDiagram.shannon)
+	 */
+	private int build(long[] rows, int rowWords, int[] index, int from, int to, int level) {
+		if (from == to)
+			return ZERO;
+		if (level == numVar)
+			return ONE;
+
+		int word = level >>> 6;
+		long bit = 1L << level;
+		int split = from;
+		int back = to;
+		while (split < back) {
+			if ((rows[index[split]*rowWords + word] & bit) == 0)
+				split++;
+			else {
+				back--;
+				int help = index[split]; index[split] = index[back]; index[back] = help;
+			}
+		}
+
+		int l = build(rows, rowWords, index, from, split, level+1);
+		int h = build(rows, rowWords, index, split, to, level+1);
+		return mk(level, l, h);
+	}
+
+	/**
+	 * The node of a variable with the given children, found in the unique table or made
+	 * (a new node references its children, the caller references the node)
+	 */
+	private int mk(int v, int l, int h) {
+		if (l == h)
+			return l;
+		int[] buckets = table[v];
+		for (int n=buckets[hash(l, h) & (buckets.length-1)]; n != -1; n=nodes[n*NODE + NEXT])
+			if (nodes[n*NODE + LOW] == l && nodes[n*NODE + HIGH] == h)
+				return n;
+
+		int n;
+		if (free != -1) {
+			n = free;
+			free = nodes[n*NODE + NEXT];
+		} else {
+			if (used*NODE == nodes.length)
+				grow();
+			n = used++;
+		}
+		nodes[n*NODE + VAR] = v;
+		nodes[n*NODE + LOW] = l;
+		nodes[n*NODE + HIGH] = h;
+		nodes[n*NODE + REF] = 0;
+		nodes[l*NODE + REF]++;
+		nodes[h*NODE + REF]++;
+		insert(v, n);
+		size++;
+		return n;
+	}
+
+	/**
+	 * Drops a reference of a node, a node without references is freed (and so are its children then)
+	 */
+	private void deref(int n) {
+		if (--nodes[n*NODE + REF] > 0 || n == ZERO || n == ONE)
+			return;
+		remove(nodes[n*NODE + VAR], n);
+		deref(nodes[n*NODE + LOW]);
+		deref(nodes[n*NODE + HIGH]);
+		nodes[n*NODE + NEXT] = free;
+		free = n;
+		size--;
+	}
+
+	private void insert(int v, int n) {
+		if (count[v] >= table[v].length) { // rehash into twice as many buckets
+			int[] buckets = new int[2*table[v].length];
+			Arrays.fill(buckets, -1);
+			for (int b=0; b<table[v].length; b++)
+				for (int m=table[v][b]; m != -1; ) {
+					int following = nodes[m*NODE + NEXT];
+					int c = hash(nodes[m*NODE + LOW], nodes[m*NODE + HIGH]) & (buckets.length-1);
+					nodes[m*NODE + NEXT] = buckets[c];
+					buckets[c] = m;
+					m = following;
+				}
+			table[v] = buckets;
+		}
+		int b = hash(nodes[n*NODE + LOW], nodes[n*NODE + HIGH]) & (table[v].length-1);
+		nodes[n*NODE + NEXT] = table[v][b];
+		table[v][b] = n;
+		count[v]++;
+	}
+
+	private void remove(int v, int n) {
+		int b = hash(nodes[n*NODE + LOW], nodes[n*NODE + HIGH]) & (table[v].length-1);
+		if (table[v][b] == n)
+			table[v][b] = nodes[n*NODE + NEXT];
+		else {
+			int m = table[v][b];
+			while (nodes[m*NODE + NEXT] != n)
+				m = nodes[m*NODE + NEXT];
+			nodes[m*NODE + NEXT] = nodes[n*NODE + NEXT];
+		}
+		count[v]--;
+	}
+
+	private void grow() {
+		nodes = Arrays.copyOf(nodes, 2*nodes.length);
+	}
+
+	private static int hash(int l, int h) {
+		return (int) (((((long) l) << 32 | h) * 0x9E3779B97F4A7C15L) >>> 32);
+	}
+
+}
@@ -8,7 +8,23 @@ package main;
 public class Main {
 
 	public static void main(String[] args) {
-		if (args.length != 1) {
+		if (args.length < 1 || args.length > 3) {
+			Routine.message();
+			return;
+		}
+		// the trees of the Wash and Random LTL experiments may look further ahead
+		int lookaheadDepth = 1;
+		long lookaheadMillis = 0;
+		try {
+			if (args.length >= 2)
+				lookaheadDepth = Integer.parseInt(args[1]);
+			if (args.length == 3)
+				lookaheadMillis = Long.parseLong(args[2]);
+		} catch (NumberFormatException e) {
+			Routine.message();
+			return;
+		}
+		if (lookaheadDepth < 1 || lookaheadMillis < 0) {
 			Routine.message();
 			return;
 		}
@@ -22,14 +38,14 @@ public class Main {
 				Routine.wash(2);
 				Routine.wash(3);
 				Routine.wash(4);
-				Routine.Rwash(0);
-				Routine.Rwash(2);
-				Routine.Rwash(3);
-				Routine.Rwash(4);
+				Routine.Rwash(0, lookaheadDepth, lookaheadMillis);
+				Routine.Rwash(2, lookaheadDepth, lookaheadMillis);
+				Routine.Rwash(3, lookaheadDepth, lookaheadMillis);
+				Routine.Rwash(4, lookaheadDepth, lookaheadMillis);
 				break;
 			case "rTOTAL" :
-				Routine.rabinizer(false);
-				Routine.rabinizer(true);
+				Routine.rabinizer(false, lookaheadDepth, lookaheadMillis);
+				Routine.rabinizer(true, lookaheadDepth, lookaheadMillis);
 				break;
 			case "a"  	:
 				Routine.aiger();
@@ -47,22 +63,31 @@ public class Main {
 				Routine.Raiger();
 				break;
 			case "Rw0"	:
-				Routine.Rwash(0);
+				Routine.Rwash(0, lookaheadDepth, lookaheadMillis);
 				break;
 			case "Rw2"	:
-				Routine.Rwash(2);
+				Routine.Rwash(2, lookaheadDepth, lookaheadMillis);
 				break;
 			case "Rw3"	:
-				Routine.Rwash(3);
+				Routine.Rwash(3, lookaheadDepth, lookaheadMillis);
 				break;
 			case "Rw4"	:
-				Routine.Rwash(4);
+				Routine.Rwash(4, lookaheadDepth, lookaheadMillis);
 				break;
 			case "rabN"	:
-				Routine.rabinizer(false);
+				Routine.rabinizer(false, lookaheadDepth, lookaheadMillis);
 				break;
 			case "rabE"	:
-				Routine.rabinizer(true);
+				Routine.rabinizer(true, lookaheadDepth, lookaheadMillis);
+				break;
+			case "Rc"	:
+				Routine.Rclassifiers();
+				break;
+			case "RaC"	:
+				Routine.Rcegis(8);
+				break;
+			case "RA"	:
+				Routine.Ractions();
 				break;
 			default		:	Routine.message();
 		}
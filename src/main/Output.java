@@ -0,0 +1,233 @@
+package main;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import machinelearning.BinaryDecisionDiagram;
+import machinelearning.Dataset;
+import machinelearning.DecisionTree;
+import model.Game;
+
+/**
+ * Writes the outputs of the routines on background threads, the routines only hand them off <br>
+ * Files (datasets, dot files) are written by FILE_THREADS threads, at most FILE_QUEUE of them wait, <br>
+ * a routine handing off more waits until a thread is free (so the heap holds only a few datasets). <br>
+ * Report rows are appended by a single thread in the order they were handed off, <br>
+ * a report file stays open while more of its rows wait. <br>
+ * The threads stop when there is nothing to write, so the program never exits with a pending output.
+ * @author vtoman - Viktor Toman
+ * viktor.toman@ist.ac.at
+ *
+ */
+final class Output {
+
+	private static final int FILE_THREADS = 2;
+	private static final int FILE_QUEUE = 2;
+	private static final int REPORT_QUEUE = 1024;
+
+	private static final ThreadPoolExecutor files = executor(FILE_THREADS, FILE_QUEUE, "output-files");
+	private static final ThreadPoolExecutor reports = executor(1, REPORT_QUEUE, "output-reports");
+	private static final HashMap<File,BufferedWriter> open = new HashMap<File,BufferedWriter>(); // used by the report thread only
+	private static final Object lock = new Object();
+	private static int pending = 0;
+
+	private Output() {}
+
+	/**
+	 * Hands off the files of a dataset (ARFF and, if enabled, binary)
+	 * @param ds		The dataset, it must not change any more
+	 * @param dsname	Name of its files
+	 * @param game		Game instance
+	 * @param estimate	Estimate size of state space
+	 */
+	static void dataset(final Dataset ds, final String dsname, final Game game, final int estimate) {
+		submit(files, new Runnable() {
+			@Override
+			public void run() {
+				ds.arffFile(dsname, game, estimate);
+				if (Dataset.binaryFiles)
+					ds.binaryFile(dsname, game, estimate);
+			}
+		});
+	}
+
+	/**
+	 * Hands off the dot file of a decision tree (see DecisionTree.dotFile)
+	 * @param tree		The tree, it must not change any more
+	 * @param filename	Name of the dot file
+	 */
+	static void dotFile(final DecisionTree tree, final String filename) {
+		submit(files, new Runnable() {
+			@Override
+			public void run() {
+				tree.dotFile(filename);
+			}
+		});
+	}
+
+	/**
+	 * Hands off the dot file of a BDD (see BinaryDecisionDiagram.dotFile), the BDD is freed once written
+	 * @param bdd		The BDD, it must not be used any more
+	 * @param filename	Name of the dot file
+	 */
+	static void dotFile(final BinaryDecisionDiagram bdd, final String filename) {
+		submit(files, new Runnable() {
+			@Override
+			public void run() {
+				try {
+					bdd.dotFile(filename);
+				} finally {
+					bdd.free();
+				}
+			}
+		});
+	}
+
+	/**
+	 * A writer of a report, what is written into it is handed off when it is closed
+	 * @param file		The report file
+	 * @param append	False - the report starts anew, True - the text is appended
+	 * @return			The writer
+	 */
+	static Writer report(final File file, final boolean append) {
+		return new Writer() {
+			private StringBuilder text = new StringBuilder();
+
+			@Override
+			public void write(char[] cbuf, int off, int len) throws IOException {
+				if (text == null)
+					throw new IOException("Report writer of "+file+" is closed");
+				text.append(cbuf, off, len);
+			}
+
+			@Override
+			public void write(String str, int off, int len) throws IOException {
+				if (text == null)
+					throw new IOException("Report writer of "+file+" is closed");
+				text.append(str, off, off + len);
+			}
+
+			@Override
+			public void flush() {}
+
+			@Override
+			public void close() {
+				if (text == null)
+					return;
+				final String row = text.toString();
+				text = null;
+				submit(reports, new Runnable() {
+					@Override
+					public void run() {
+						Output.append(file, append, row);
+					}
+				});
+			}
+		};
+	}
+
+	/**
+	 * Waits until everything handed off so far is written
+	 */
+	static void await() {
+		synchronized (lock) {
+			while (pending > 0) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					System.out.println("Exception when waiting for the outputs to be written");
+					e.printStackTrace();
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs on the report thread
+	 */
+	private static void append(File file, boolean append, String row) {
+		try {
+			BufferedWriter writer = open.get(file);
+			if (writer == null || !append) {
+				if (writer != null)
+					writer.close();
+				File directory = file.getParentFile();
+				if (directory != null && !directory.exists())
+					directory.mkdirs();
+				writer = new BufferedWriter(new FileWriter(file, append));
+				open.put(file, writer);
+			}
+			writer.write(row);
+			if (reports.getQueue().isEmpty()) { // nothing else to append for now
+				for (BufferedWriter w : open.values())
+					w.close();
+				open.clear();
+			}
+		} catch (IOException e) {
+			System.out.println("Exception when writing the report "+file);
+			e.printStackTrace();
+			open.remove(file);
+		}
+	}
+
+	private static void submit(ThreadPoolExecutor executor, final Runnable task) {
+		synchronized (lock) {
+			pending++;
+		}
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					task.run();
+				} finally {
+					synchronized (lock) {
+						pending--;
+						if (pending == 0)
+							lock.notifyAll();
+					}
+				}
+			}
+		});
+	}
+
+	private static ThreadPoolExecutor executor(int threads, int capacity, final String name) {
+		ThreadPoolExecutor result = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(capacity),
+				new ThreadFactory() {
+					private int count = 0;
+
+					@Override
+					public synchronized Thread newThread(Runnable r) {
+						return new Thread(r, name+"-"+(count++));
+					}
+				},
+				new RejectedExecutionHandler() {
+					@Override
+					public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+						// the queue is full, wait for a free place
+						BlockingQueue<Runnable> queue = executor.getQueue();
+						try {
+							queue.put(r);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							r.run(); // written right away then
+						}
+					}
+				});
+		result.allowCoreThreadTimeOut(true);
+		return result;
+	}
+
+}
@@ -2,7 +2,6 @@ package main;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.util.ArrayList;
 import java.util.Random;
 import java.util.Scanner;
@@ -16,12 +15,20 @@ import strategy.Strategy;
 import util.Pair;
 import util.Triplet;
 import util.Util;
+import strategy.Cegis;
 import strategy.Parity3;
 import strategy.Reachability;
 import strategy.Safety;
+import machinelearning.ActionDataset;
+import machinelearning.ActionTree;
+import machinelearning.BDDOrderSearch;
 import machinelearning.BinaryDecisionDiagram;
+import machinelearning.BinaryFile;
+import machinelearning.Classifier;
+import machinelearning.CompiledTree;
 import machinelearning.Dataset;
 import machinelearning.DecisionTree;
+import machinelearning.LearningSession;
 
 /**
  * @author vtoman - Viktor Toman
@@ -34,7 +41,7 @@ public class Routine {
 	 * Prints information on how to use the program
 	 */
 	public static void message() {
-		System.out.println("The program expects one input string-argument:");
+		System.out.println("The program expects one input string-argument (see below for the optional ones):");
 		System.out.println("'a'   -- creates AIGER games and solves them");
 		System.out.println("'wX'  -- creates Wash games with X (2..4) tanks and solves them");
 		System.out.println("'Ra'  -- represents computed AIGER strategies");
@@ -44,12 +51,61 @@ public class Routine {
 		System.out.println("'aTOTAL' -- performs entire Bit Shifter experiments");
 		System.out.println("'wTOTAL' -- performs entire Scheduling of Washing Cycles experiments");
 		System.out.println("'rTOTAL' -- performs entire Random LTL experiments");
+		System.out.println("'Rc'  -- compares the classification speed of the learned DT+ (tree, flat arrays, generated class, batches)");
+		System.out.println("'RaC' -- learns DT+ of the AIGER and Wash (2..3 tanks) strategies from sampled states refined by counterexamples");
+		System.out.println("'RA'  -- learns trees from the AIGER and Wash states to their allowed actions and compares them to DT+");
+		System.out.println("'RwX', 'rabN', 'rabE' and the TOTALs take two optional arguments: the lookahead depth of the trees (default 1)");
+		System.out.println("      and the wall-clock budget of one deeper lookahead in milliseconds (default 0 - unlimited)");
+	}
+
+	/**
+	 * Recognizes dataset files, a dataset can have an ARFF file (possibly gzipped), a binary file or both
+	 * @param file		A file of the datasets directory
+	 * @param known		Datasets found so far
+	 * @return			Name of the dataset of the file, or null if it is not a dataset file or the dataset is known
+	 */
+	private static String datasetName(File file, ArrayList<String> known) {
+		String name = file.getName();
+		if (name.endsWith(".arff"))
+			name = name.substring(0, name.length() - ".arff".length());
+		else if (name.endsWith(".arff.gz"))
+			name = name.substring(0, name.length() - ".arff.gz".length());
+		else if (name.endsWith(BinaryFile.EXTENSION))
+			name = name.substring(0, name.length() - BinaryFile.EXTENSION.length());
+		else
+			return null;
+		return known.contains(name)?null:name;
+	}
+
+	/**
+	 * @param lookaheadDepth	Number of levels the lookahead of the trees looks ahead
+	 * @return					Suffix of the report of the trees with this lookahead (none for the classical lookahead)
+	 */
+	private static String lookahead(int lookaheadDepth) {
+		return (lookaheadDepth > 1)?"LA"+lookaheadDepth:"";
+	}
+
+	/**
+	 * @param order	Variable (level) of every attribute of a BDD
+	 * @return		The order as a report column, the levels separated by commas
+	 */
+	private static String order(ArrayList<Integer> order) {
+		StringBuilder result = new StringBuilder();
+		for (int i=0; i<order.size(); i++) {
+			if (i > 0)
+				result.append(',');
+			result.append(order.get(i));
+		}
+		return result.toString();
 	}
 
 	/**
 	 * Rabinizer:: Games -> Datasets -> BDDs and DTs
+	 * @param encoded			False - naive, True - encoded games
+	 * @param lookaheadDepth	Number of levels the lookahead of the trees looks ahead, 1 - the classical lookahead
+	 * @param lookaheadMillis	Wall-clock budget (in milliseconds) of one lookahead deeper than 1, 0 - unlimited
 	 */
-	public static void rabinizer(boolean encoded) {
+	public static void rabinizer(boolean encoded, int lookaheadDepth, long lookaheadMillis) {
 		GameInfo gameinfo = new GameInfo();
 		gameinfo.type = 'r';
 		Random seedgen = new Random(47);
@@ -60,11 +116,11 @@ public class Routine {
 		File directory = new File("results/reports/");
 		if (!directory.exists())
 			directory.mkdirs();
-		File outputFile = new File("results/reports/reprRandomLTL"+(encoded?"encoded":"naive")+".txt");
+		File outputFile = new File("results/reports/reprRandomLTL"+(encoded?"encoded":"naive")+lookahead(lookaheadDepth)+".txt");
 		String nl = System.getProperty("line.separator");
-        try(BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile, true))) {
+        try(BufferedWriter writer = new BufferedWriter(Output.report(outputFile, true))) {
 
-        	writer.write(String.format("%118s","|BDD|"));
+        	writer.write(String.format("%142s","|BDD|"));
         	writer.write(String.format("%30s","|DTnl|"));
         	writer.write(String.format("%30s","|DT|"));
         	writer.write(String.format("%30s","|DT+|"));
@@ -80,6 +136,9 @@ public class Routine {
         	writer.write(String.format("%8s","Min"));
         	writer.write(String.format("%10s","Mean"));
         	writer.write(String.format("%8s","Max"));
+        	writer.write(String.format("%8s","Time")); // the attempts one after another, as without the parallel search
+        	writer.write(String.format("%8s","Wall")); // the attempts in parallel
+        	writer.write(String.format("%8s","Sift"));
         	writer.write(String.format("%8s","Time"));
 
         	writer.write(String.format("%12s", "Size"));
@@ -100,6 +159,8 @@ public class Routine {
         	writer.write(String.format("%4s", "Heu"));
         	writer.write(" ?");
 
+        	writer.write("  Sift order");
+
         	writer.write(nl);
         } catch (Exception e) {
         	e.printStackTrace();
@@ -138,10 +199,12 @@ public class Routine {
 				Dataset ds = new Dataset(game, strategy);
 				String dsname = (strategy.player==1?"1":"2") + "_" + strategy.objective + "_C_"
 								+ gameinfo.filename + "_" + APassgn + (encoded?"_encoded":"_naive");
-				ds.arffFile(dsname, game, game.stateSize);
+				Output.dataset(ds, dsname, game, game.stateSize);
 				System.out.println(dsname);
+				// the decision trees learned from ds share their computations
+				LearningSession session = new LearningSession(ds, lookaheadDepth, lookaheadMillis);
 
-	            try(BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile, true))) {
+	            try(BufferedWriter writer = new BufferedWriter(Output.report(outputFile, true))) {
 
 	            	writer.write(String.format("%-30s",gameinfo.filename+"_"+APassgn+"_naive"));
 	            	writer.write(String.format("%12d",game.stateSize));
@@ -150,7 +213,7 @@ public class Routine {
 	            	writer.write(String.format("%16d",ds.numNO+ds.numYES));
 
 	            	long startTime = System.nanoTime();
-	            	DecisionTree dtplus = new DecisionTree(ds, true, true);
+	            	DecisionTree dtplus = new DecisionTree(session, true, true, 'p');
 	            	long elapsedTime = System.nanoTime() - startTime;
 	            	double timedtplus = ((double) elapsedTime) / 1000000000.0;
 	            	int sizedtplus = dtplus.numberOfInnerNodes;
@@ -161,7 +224,7 @@ public class Routine {
 	            	System.gc();
 
 	            	startTime = System.nanoTime();
-	            	DecisionTree dt = new DecisionTree(ds, true, false);
+	            	DecisionTree dt = new DecisionTree(session, true, false, 'p');
 	            	elapsedTime = System.nanoTime() - startTime;
 	            	double timedt = ((double) elapsedTime) / 1000000000.0;
 	            	int sizedt = dt.numberOfInnerNodes;
@@ -172,7 +235,7 @@ public class Routine {
 	            	System.gc();
 
 	            	startTime = System.nanoTime();
-	            	DecisionTree dtnl = new DecisionTree(ds, false, false);
+	            	DecisionTree dtnl = new DecisionTree(session, false, false, 'p');
 	            	elapsedTime = System.nanoTime() - startTime;
 	            	double timedtnl = ((double) elapsedTime) / 1000000000.0;
 	            	int sizedtnl = dtnl.numberOfInnerNodes;
@@ -182,24 +245,36 @@ public class Routine {
 	            	dtnl = null;
 	            	System.gc();
 
+	            	String orderbddsift = null;
 	            	if (!encoded) {
 						startTime = System.nanoTime();
 						BinaryDecisionDiagram bdd = new BinaryDecisionDiagram(ds, false, -1);
+						double timebddorig = ((double) (System.nanoTime() - startTime)) / 1000000000.0;
 						int sizebdd = bdd.numberOfInnerNodes();
-						int sizebddmax = bdd.numberOfInnerNodes();
-						int sizebddmin = bdd.numberOfInnerNodes();
-						double sizebddmean = 0;
+						bdd.free();
+						bdd = null;
 						int attemptno = 10; // 1000
-						for (int j=0; j<attemptno; j++) {
-							bdd = new BinaryDecisionDiagram(ds, true, seedgen.nextInt(31337));
-							sizebddmax = Math.max(sizebddmax, bdd.numberOfInnerNodes());
-							sizebddmin = Math.min(sizebddmin, bdd.numberOfInnerNodes());
-							sizebddmean += bdd.numberOfInnerNodes();
-						}
-						sizebddmean /= attemptno;
+						int[] seeds = new int[attemptno];
+						for (int j=0; j<attemptno; j++)
+							seeds[j] = seedgen.nextInt(31337);
+						BDDOrderSearch search = new BDDOrderSearch(ds, seeds, true); // the attempts in parallel
+						int sizebddmax = Math.max(sizebdd, search.max);
+						int sizebddmin = Math.min(sizebdd, search.min);
+						double sizebddmean = search.mean;
+						double budget = search.time; // sifting gets the time the attempts took one after another
+						search = null;
 						elapsedTime = System.nanoTime() - startTime;
-						double timebdd = ((double) elapsedTime) / 1000000000.0;
+						double timebddwall = ((double) elapsedTime) / 1000000000.0;
+						double timebdd = timebddorig + budget;
+
+						startTime = System.nanoTime();
+						bdd = new BinaryDecisionDiagram(ds, budget);
+						int sizebddsift = bdd.numberOfInnerNodes();
+						orderbddsift = order(bdd.order);
+						bdd.free();
 						bdd = null;
+						elapsedTime = System.nanoTime() - startTime;
+						double timebddsift = ((double) elapsedTime) / 1000000000.0;
 						System.gc();
 
 						//BDD
@@ -208,13 +283,19 @@ public class Routine {
 						writer.write(String.format("%10.1f", sizebddmean));
 						writer.write(String.format("%8d", sizebddmax));
 						writer.write(String.format("%8.1f", timebdd));
+						writer.write(String.format("%8.1f", timebddwall));
+						writer.write(String.format("%8d", sizebddsift));
+						writer.write(String.format("%8.1f", timebddsift));
 					} else {
 	            		//Won't compute BDDs in encoded version
+						writer.write(String.format("%8s", "x"));
 						writer.write(String.format("%14s", "x"));
 						writer.write(String.format("%8s", "x"));
 						writer.write(String.format("%10s", "x"));
 						writer.write(String.format("%8s", "x"));
 						writer.write(String.format("%8s", "x"));
+						writer.write(String.format("%8s", "x"));
+						writer.write(String.format("%8s", "x"));
 					}
 
 	            	//DT no lookahead
@@ -238,6 +319,9 @@ public class Routine {
 	            	writer.write(String.format("%4d", heudtplus));
 	            	writer.write(" "+(resultdtplus?"W":"L"));
 
+	            	//order found by sifting
+	            	writer.write("  "+(encoded?"x":orderbddsift));
+
 	            	writer.write(nl);
 
 	            } catch (Exception e) {
@@ -247,29 +331,41 @@ public class Routine {
 
 			}
 		}
+		Output.await();
+		BinaryDecisionDiagram.disposeFactories();
 	}
 
 	/**
 	 * WASH:: Datasets -> BDDs and DTs
-	 * @param n		Number of tanks (0 or 2..4)
+	 * @param n					Number of tanks (0 or 2..4)
+	 * @param lookaheadDepth	Number of levels the lookahead of the trees looks ahead, 1 - the classical lookahead
+	 * @param lookaheadMillis	Wall-clock budget (in milliseconds) of one lookahead deeper than 1, 0 - unlimited
 	 */
-	public static void Rwash(int n) {
+	public static void Rwash(int n, int lookaheadDepth, long lookaheadMillis) {
 		assert(n == 0 || (n >= 2 && n <= 4)); // 0 deals with all reachability
 		Random seedgen = new Random(47);
+		// the largest datasets (4 tanks) are learned depth-first to keep the heap small
+		// (the pending datasets are packed beyond a quarter of the heap),
+		// the nodes of their DT and DTnl with a million instances and more choose their atoms from samples
+		char buildmode = (n == 4)?'d':'p';
+		long heapBudget = (n == 4)?Runtime.getRuntime().maxMemory() / 4:0;
+		int samplingThreshold = (n == 4)?1 << 20:0;
 
 		ArrayList<String> filenames = new ArrayList<String>();
 		File[] files = new File("results/datasets").listFiles();
 		for (File file : files)
 		    if (file.isFile()) {
+		    	String name = datasetName(file, filenames);
+		    	if (name == null) continue;
 		    	if (n == 0) {
-			    	if (file.getName().contains("wash") && file.getName().contains("1_r") && file.getName().contains("arff")) {
-			    		if (file.getName().contains("_C_"))
-			    			filenames.add(file.getName().replace(".arff", ""));
+			    	if (name.contains("wash") && name.contains("1_r")) {
+			    		if (name.contains("_C_"))
+			    			filenames.add(name);
 			    	}
 		    	} else {
-			    	if (file.getName().contains("wash_"+n) && file.getName().contains("2_s") && file.getName().contains("arff")) {
-			    		if (file.getName().contains("_C_"))
-			    			filenames.add(file.getName().replace(".arff", ""));
+			    	if (name.contains("wash_"+n) && name.contains("2_s")) {
+			    		if (name.contains("_C_"))
+			    			filenames.add(name);
 			    	}
 		    	}
 		    }
@@ -277,11 +373,11 @@ public class Routine {
 		File directory = new File("results/reports/");
 		if (!directory.exists())
 			directory.mkdirs();
-		File outputFile = new File("results/reports/reprWash"+(n==0?"reach":n)+".txt");
+		File outputFile = new File("results/reports/reprWash"+(n==0?"reach":n)+lookahead(lookaheadDepth)+".txt");
 		String nl = System.getProperty("line.separator");
 
-        try(BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile, false))) {
-        	writer.write(String.format("%118s","|BDD|"));
+        try(BufferedWriter writer = new BufferedWriter(Output.report(outputFile, false))) {
+        	writer.write(String.format("%142s","|BDD|"));
         	writer.write(String.format("%30s","|DTnl|"));
         	writer.write(String.format("%30s","|DT|"));
         	writer.write(String.format("%30s","|DT+|"));
@@ -297,6 +393,9 @@ public class Routine {
         	writer.write(String.format("%8s","Min"));
         	writer.write(String.format("%10s","Mean"));
         	writer.write(String.format("%8s","Max"));
+        	writer.write(String.format("%8s","Time")); // the attempts one after another, as without the parallel search
+        	writer.write(String.format("%8s","Wall")); // the attempts in parallel
+        	writer.write(String.format("%8s","Sift"));
         	writer.write(String.format("%8s","Time"));
 
         	writer.write(String.format("%12s", "Size"));
@@ -317,6 +416,8 @@ public class Routine {
         	writer.write(String.format("%4s", "Heu"));
         	writer.write(" ?");
 
+        	writer.write("  Sift order");
+
         	writer.write(nl);
         } catch (Exception e) {
         	e.printStackTrace();
@@ -325,51 +426,23 @@ public class Routine {
 
     	for (int i=0; i<filenames.size(); i++) {
 
-        	GameInfo gameinfo = new GameInfo();
-        	gameinfo.type = 'w';
-        	gameinfo.n = Character.getNumericValue(filenames.get(i).charAt(11));
-        	gameinfo.d = Character.getNumericValue(filenames.get(i).charAt(13));
-        	gameinfo.k = Character.getNumericValue(filenames.get(i).charAt(15));
-        	gameinfo.t = Character.getNumericValue(filenames.get(i).charAt(17));
-        	gameinfo.lightmode = filenames.get(i).charAt(19) == 't';
-        	gameinfo.filename = filenames.get(i).substring(6);
-
-        	int distance = -1;
-        	try (Scanner sc = new Scanner(new File("results/reports/reportwash"+gameinfo.n+".txt"))) {
-        		String token = "";
-        		while (sc.hasNext()) {
-        			token = sc.next();
-        			if (token.equals(gameinfo.filename)) {
-        				while (!token.equals("Distance:"))
-        					token = sc.next();
-        				token = sc.next();
-        				token = token.substring(0, token.length()-1);
-        				distance = Integer.parseInt(token);
-        				break;
-        			}
-        		}
-        	} catch (Exception e) {
-        		e.printStackTrace();
-        		return;
-        	}
-        	if (distance == -1) {
-        		System.out.println("Could not find distance for Wash game");
+        	GameInfo gameinfo = washGameInfo(filenames.get(i));
+        	Pair<Game,Boolean> game = washGame(gameinfo);
+        	if (game == null)
         		return;
-        	}
-
-        	Pair<Game,Boolean> game = Wash.create(null, gameinfo, distance);
-        	assert(game.second());
 
     		System.out.println(filenames.get(i));
-            try(BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile, true))) {
+            try(BufferedWriter writer = new BufferedWriter(Output.report(outputFile, true))) {
 
             	Dataset ds = new Dataset(filenames.get(i), writer);
+            	// the decision trees learned from ds share their computations
+            	LearningSession session = new LearningSession(ds, lookaheadDepth, lookaheadMillis, samplingThreshold);
 
             	long startTime = System.nanoTime();
-            	DecisionTree dtplus = new DecisionTree(ds, true, true);
+            	DecisionTree dtplus = new DecisionTree(session, true, true, buildmode, heapBudget);
             	long elapsedTime = System.nanoTime() - startTime;
             	double timedtplus = ((double) elapsedTime) / 1000000000.0;
-            	if (n==0 || n==2) dtplus.dotFile("dt+_"+filenames.get(i));
+            	if (n==0 || n==2) Output.dotFile(dtplus, "dt+_"+filenames.get(i));
             	int sizedtplus = dtplus.numberOfInnerNodes;
             	int ladtplus = dtplus.lookaheadFiredUp;
             	int heudtplus = dtplus.heuristicFiredUp;
@@ -379,7 +452,7 @@ public class Routine {
             	System.gc();
 
             	startTime = System.nanoTime();
-            	DecisionTree dt = new DecisionTree(ds, true, false);
+            	DecisionTree dt = new DecisionTree(session, true, false, buildmode, heapBudget);
             	elapsedTime = System.nanoTime() - startTime;
             	double timedt = ((double) elapsedTime) / 1000000000.0;
             	int sizedt = dt.numberOfInnerNodes;
@@ -391,7 +464,7 @@ public class Routine {
             	System.gc();
 
             	startTime = System.nanoTime();
-            	DecisionTree dtnl = new DecisionTree(ds, false, false);
+            	DecisionTree dtnl = new DecisionTree(session, false, false, buildmode, heapBudget);
             	elapsedTime = System.nanoTime() - startTime;
             	double timedtnl = ((double) elapsedTime) / 1000000000.0;
             	int sizedtnl = dtnl.numberOfInnerNodes;
@@ -404,21 +477,32 @@ public class Routine {
 
             	startTime = System.nanoTime();
             	BinaryDecisionDiagram bdd = new BinaryDecisionDiagram(ds, false, -1);
+            	double timebddorig = ((double) (System.nanoTime() - startTime)) / 1000000000.0;
             	int sizebdd = bdd.numberOfInnerNodes();
-            	int sizebddmax = bdd.numberOfInnerNodes();
-            	int sizebddmin = bdd.numberOfInnerNodes();
-            	double sizebddmean = 0;
+            	bdd.free();
+            	bdd = null;
 				int attemptno = 10; // 1000
-            	for (int j=0; j<attemptno; j++) {
-            		bdd = new BinaryDecisionDiagram(ds, true, seedgen.nextInt(31337));
-            		sizebddmax = Math.max(sizebddmax, bdd.numberOfInnerNodes());
-            		sizebddmin = Math.min(sizebddmin, bdd.numberOfInnerNodes());
-            		sizebddmean += bdd.numberOfInnerNodes();
-            	}
-            	sizebddmean /= attemptno;
+            	int[] seeds = new int[attemptno];
+            	for (int j=0; j<attemptno; j++)
+            		seeds[j] = seedgen.nextInt(31337);
+            	BDDOrderSearch search = new BDDOrderSearch(ds, seeds, true); // the attempts in parallel
+            	int sizebddmax = Math.max(sizebdd, search.max);
+            	int sizebddmin = Math.min(sizebdd, search.min);
+            	double sizebddmean = search.mean;
+            	double budget = search.time; // sifting gets the time the attempts took one after another
+            	search = null;
             	elapsedTime = System.nanoTime() - startTime;
-            	double timebdd = ((double) elapsedTime) / 1000000000.0;
+            	double timebddwall = ((double) elapsedTime) / 1000000000.0;
+            	double timebdd = timebddorig + budget;
+
+            	startTime = System.nanoTime();
+            	bdd = new BinaryDecisionDiagram(ds, budget);
+            	int sizebddsift = bdd.numberOfInnerNodes();
+            	String orderbddsift = order(bdd.order);
+            	bdd.free();
             	bdd = null;
+            	elapsedTime = System.nanoTime() - startTime;
+            	double timebddsift = ((double) elapsedTime) / 1000000000.0;
             	System.gc();
 
             	//BDD
@@ -427,6 +511,9 @@ public class Routine {
             	writer.write(String.format("%10.1f", sizebddmean));
             	writer.write(String.format("%8d", sizebddmax));
             	writer.write(String.format("%8.1f", timebdd));
+            	writer.write(String.format("%8.1f", timebddwall));
+            	writer.write(String.format("%8d", sizebddsift));
+            	writer.write(String.format("%8.1f", timebddsift));
 
             	//DT no lookahead
             	writer.write(String.format("%12d", sizedtnl));
@@ -449,6 +536,9 @@ public class Routine {
             	writer.write(String.format("%4d", heudtplus));
             	writer.write(" "+(resultdtplus?"W":"L"));
 
+            	//order found by sifting
+            	writer.write("  "+orderbddsift);
+
             	writer.write(nl);
 
             } catch (Exception e) {
@@ -460,6 +550,57 @@ public class Routine {
         	gameinfo = null;
         	System.gc();
     	}
+		BinaryDecisionDiagram.disposeFactories();
+	}
+
+	/**
+	 * @param dsname	Name of a Wash dataset
+	 * @return			Info about its game
+	 */
+	private static GameInfo washGameInfo(String dsname) {
+		GameInfo gameinfo = new GameInfo();
+		gameinfo.type = 'w';
+		gameinfo.n = Character.getNumericValue(dsname.charAt(11));
+		gameinfo.d = Character.getNumericValue(dsname.charAt(13));
+		gameinfo.k = Character.getNumericValue(dsname.charAt(15));
+		gameinfo.t = Character.getNumericValue(dsname.charAt(17));
+		gameinfo.lightmode = dsname.charAt(19) == 't';
+		gameinfo.filename = dsname.substring(6);
+		return gameinfo;
+	}
+
+	/**
+	 * Creates the Wash game of a dataset again, with the distance found in its report (see wash)
+	 * @param gameinfo	Info about the game
+	 * @return			The game, or null if its distance could not be found
+	 */
+	private static Pair<Game,Boolean> washGame(GameInfo gameinfo) {
+		int distance = -1;
+		try (Scanner sc = new Scanner(new File("results/reports/reportwash"+gameinfo.n+".txt"))) {
+			String token = "";
+			while (sc.hasNext()) {
+				token = sc.next();
+				if (token.equals(gameinfo.filename)) {
+					while (!token.equals("Distance:"))
+						token = sc.next();
+					token = sc.next();
+					token = token.substring(0, token.length()-1);
+					distance = Integer.parseInt(token);
+					break;
+				}
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			return null;
+		}
+		if (distance == -1) {
+			System.out.println("Could not find distance for Wash game");
+			return null;
+		}
+
+		Pair<Game,Boolean> game = Wash.create(null, gameinfo, distance);
+		assert(game.second());
+		return game;
 	}
 
 	/**
@@ -487,7 +628,7 @@ public class Routine {
 			gameinfo.fill(n, d, k, t, lightmode[lm]);
 			String filename = gameinfo.write();
 
-	        try(BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile, true))) {
+	        try(BufferedWriter writer = new BufferedWriter(Output.report(outputFile, true))) {
 	        	System.out.print(filename+"   ");
 	        	writer.write(filename+"   ");
 				int estimate = Wash.create(gameinfo, false);
@@ -514,11 +655,11 @@ public class Routine {
 
 					Dataset ds = new Dataset(game, s);
 					String dsname = (s.player==1?"1":"2") + "_" + s.objective + "_C_" + filename;
-					ds.arffFile(dsname, game, estimate);
+					Output.dataset(ds, dsname, game, estimate);
+					boolean res = Reachability.checkBV(game, gameinfo, s);
 
 					System.out.print("Classical strategy saved in "+dsname+".arff... ");
 					writer.write("Classical strategy saved in "+dsname+".arff... ");
-					boolean res = Reachability.check(game, gameinfo, dsname);
 					System.out.println(res?"and checked successfully":"ERROR - IT'S NOT WINNING");
 					writer.write((res?"and checked successfully":"ERROR - IT'S NOT WINNING")+nl);
 
@@ -532,11 +673,11 @@ public class Routine {
 
 					Dataset ds = new Dataset(game, s);
 					String dsname = (s.player==1?"1":"2") + "_" + s.objective + "_C_" + filename;
-					ds.arffFile(dsname, game, estimate);
+					Output.dataset(ds, dsname, game, estimate);
+					boolean res = Safety.checkBV(game, gameinfo, s);
 
 					System.out.print("Classical strategy saved in "+dsname+".arff... ");
 					writer.write("Classical strategy saved in "+dsname+".arff... ");
-					boolean res = Safety.check(game, gameinfo, dsname);
 					System.out.println(res?"and checked successfully":"ERROR - IT'S NOT WINNING");
 					writer.write((res?"and checked successfully":"ERROR - IT'S NOT WINNING")+nl);
 
@@ -553,6 +694,8 @@ public class Routine {
 	        	// dont return, just continue to the next example
 	        }
 		}
+		// the datasets are read by the next routines
+		Output.await();
 	}
 
 	/**
@@ -565,9 +708,10 @@ public class Routine {
 
 		for (File file : files)
 		    if (file.isFile()) {
-		    	if (file.getName().contains("bs") && file.getName().contains("arff"))
-		    		if (file.getName().contains("_C_"))
-		    			filenamesC.add(file.getName().replace(".arff", ""));
+		    	String name = datasetName(file, filenamesC);
+		    	if (name != null && name.contains("bs"))
+		    		if (name.contains("_C_"))
+		    			filenamesC.add(name);
 		    }
 
 		File directory = new File("results/reports/");
@@ -575,7 +719,7 @@ public class Routine {
 			directory.mkdirs();
 		File outputFileC = new File("results/reports/reprAiger.txt");
 		String nl = System.getProperty("line.separator");
-        try(BufferedWriter writer = new BufferedWriter(new FileWriter(outputFileC, false))) {
+        try(BufferedWriter writer = new BufferedWriter(Output.report(outputFileC, false))) {
         	writer.write(String.format("%-30s","Name"));
         	writer.write(String.format("%12s","|S|"));
         	writer.write(String.format("%6s","|I|"));
@@ -598,15 +742,17 @@ public class Routine {
         	assert(game.second());
 
     		System.out.println(filenamesC.get(i));
-            try(BufferedWriter writer = new BufferedWriter(new FileWriter(outputFileC, true))) {
+            try(BufferedWriter writer = new BufferedWriter(Output.report(outputFileC, true))) {
 
             	Dataset ds = new Dataset(filenamesC.get(i), writer);
+            	// the decision trees learned from ds share their computations
+            	LearningSession session = new LearningSession(ds);
 
             	long startTime = System.nanoTime();
-            	DecisionTree dt2 = new DecisionTree(ds, true, true);
+            	DecisionTree dt2 = new DecisionTree(session, true, true, 'p');
             	long elapsedTime = System.nanoTime() - startTime;
             	double timedt2 = ((double) elapsedTime) / 1000000000.0;
-            	dt2.dotFile("dt+_"+filenamesC.get(i));
+            	Output.dotFile(dt2, "dt+_"+filenamesC.get(i));
             	int sizedt2 = dt2.numberOfInnerNodes;
             	int ladt2 = dt2.lookaheadFiredUp;
             	int heudt2 = dt2.heuristicFiredUp;
@@ -615,10 +761,10 @@ public class Routine {
             	System.gc();
 
             	startTime = System.nanoTime();
-            	DecisionTree dt1 = new DecisionTree(ds, true, false);
+            	DecisionTree dt1 = new DecisionTree(session, true, false, 'p');
             	elapsedTime = System.nanoTime() - startTime;
             	double timedt1 = ((double) elapsedTime) / 1000000000.0;
-            	dt1.dotFile("dt-_"+filenamesC.get(i));
+            	Output.dotFile(dt1, "dt-_"+filenamesC.get(i));
             	int sizedt1 = dt1.numberOfInnerNodes;
             	int ladt1 = dt1.lookaheadFiredUp;
             	int heudt1 = dt1.heuristicFiredUp;
@@ -630,8 +776,8 @@ public class Routine {
             	BinaryDecisionDiagram bdd = new BinaryDecisionDiagram(ds, false, -1);
             	elapsedTime = System.nanoTime() - startTime;
             	double timebdd = ((double) elapsedTime) / 1000000000.0;
-            	bdd.dotFile("bdd_"+filenamesC.get(i));
             	int sizebdd = bdd.numberOfInnerNodes();
+            	Output.dotFile(bdd, "bdd_"+filenamesC.get(i));
             	bdd = null;
             	System.gc();
 
@@ -664,6 +810,254 @@ public class Routine {
         	gameinfo = null;
         	System.gc();
     	}
+		// the BDD of the last instance frees its factory once its dot file is written
+		Output.await();
+		BinaryDecisionDiagram.disposeFactories();
+	}
+
+	/**
+	 * Datasets -> DT+ -> classification speed of the tree, its flat arrays, its generated class <br>
+	 * and its flat arrays classifying all the instances as one batch <br>
+	 * Every classifier labels all the instances of the dataset (at least a million times in total), <br>
+	 * the report gives the nanoseconds per instance (datasets with more than 64 attributes are skipped)
+	 */
+	public static void Rclassifiers() {
+		ArrayList<String> filenames = new ArrayList<String>();
+		File[] files = new File("results/datasets").listFiles();
+		for (File file : files)
+		    if (file.isFile()) {
+		    	String name = datasetName(file, filenames);
+		    	if (name != null && name.contains("_C_"))
+		    		filenames.add(name);
+		    }
+
+		File directory = new File("results/reports/");
+		if (!directory.exists())
+			directory.mkdirs();
+		File outputFile = new File("results/reports/reprClassifiers.txt");
+		String nl = System.getProperty("line.separator");
+        try(BufferedWriter writer = new BufferedWriter(Output.report(outputFile, false))) {
+        	writer.write(String.format("%-30s","Name"));
+        	writer.write(String.format("%12s","|S|"));
+        	writer.write(String.format("%6s","|I|"));
+        	writer.write(String.format("%6s","|O|"));
+        	writer.write(String.format("%16s","|Good|+|Bad|"));
+        	writer.write(String.format("%12s", "Size"));
+        	writer.write(String.format("%10s", "Tree"));
+        	writer.write(String.format("%10s", "Flat"));
+        	writer.write(String.format("%10s", "Gen"));
+        	writer.write(String.format("%10s", "Batch"));
+        	writer.write(nl);
+        } catch (Exception e) {
+        	e.printStackTrace();
+        	return;
+        }
+
+    	for (int i=0; i<filenames.size(); i++) {
+    		System.out.println(filenames.get(i));
+            try(BufferedWriter writer = new BufferedWriter(Output.report(outputFile, true))) {
+
+            	Dataset ds = new Dataset(filenames.get(i), writer);
+            	ds.load(); // the samples are built from the instances
+            	if (ds.attributes.size() > 64) {
+            		writer.write(nl);
+            		continue;
+            	}
+            	DecisionTree dt = new DecisionTree(ds, true, true);
+            	CompiledTree compiled = dt.compile();
+            	Classifier generated = compiled.generate();
+
+            	ArrayList<ArrayList<Boolean>> samples = new ArrayList<ArrayList<Boolean>>(ds.instances.size());
+            	long[] bits = new long[ds.instances.size()];
+            	for (int j=0; j<ds.instances.size(); j++) {
+            		ArrayList<Boolean> sample = new ArrayList<Boolean>(ds.attributes.size());
+            		for (int a=0; a<ds.attributes.size(); a++) {
+            			sample.add(ds.instances.get(j).attValues.get(a));
+            			if (sample.get(a))
+            				bits[j] |= 1L << a;
+            		}
+            		samples.add(sample);
+            	}
+
+            	// the first rounds warm the code up and check the classifiers agree
+            	int repetitions = Math.max(10, 1000000 / bits.length);
+            	for (int r=0; r<repetitions; r++)
+	            	for (int j=0; j<bits.length; j++) {
+	            		boolean expected = dt.classify(samples.get(j));
+	            		assert(compiled.classify(bits[j]) == expected);
+	            		assert(generated.classify(bits[j]) == expected);
+	            	}
+            	long[] batch = null;
+            	for (int r=0; r<repetitions; r++)
+            		batch = compiled.classifyRows(bits, bits.length);
+            	for (int j=0; j<bits.length; j++)
+            		assert(((batch[j >>> 6] >>> j) & 1L) == (compiled.classify(bits[j])?1:0));
+
+            	int yes = 0;
+            	long startTime = System.nanoTime();
+            	for (int r=0; r<repetitions; r++)
+            		for (ArrayList<Boolean> sample : samples)
+            			if (dt.classify(sample)) yes++;
+            	double timetree = ((double) (System.nanoTime() - startTime)) / repetitions / bits.length;
+
+            	startTime = System.nanoTime();
+            	for (int r=0; r<repetitions; r++)
+            		for (long sample : bits)
+            			if (compiled.classify(sample)) yes++;
+            	double timeflat = ((double) (System.nanoTime() - startTime)) / repetitions / bits.length;
+
+            	startTime = System.nanoTime();
+            	for (int r=0; r<repetitions; r++)
+            		for (long sample : bits)
+            			if (generated.classify(sample)) yes++;
+            	double timegen = ((double) (System.nanoTime() - startTime)) / repetitions / bits.length;
+
+            	startTime = System.nanoTime();
+            	for (int r=0; r<repetitions; r++) {
+            		batch = compiled.classifyRows(bits, bits.length);
+            		for (long word : batch)
+            			yes += Long.bitCount(word);
+            	}
+            	double timebatch = ((double) (System.nanoTime() - startTime)) / repetitions / bits.length;
+            	assert(yes % 4 == 0);
+
+            	writer.write(String.format("%12d", dt.numberOfInnerNodes));
+            	writer.write(String.format("%10.1f", timetree));
+            	writer.write(String.format("%10.1f", timeflat));
+            	writer.write(String.format("%10.1f", timegen));
+            	writer.write(String.format("%10.1f", timebatch));
+            	writer.write(nl);
+            } catch (Exception e) {
+            	e.printStackTrace();
+            }
+    	}
+	}
+
+	/**
+	 * AIGER and WASH:: Datasets -> DT+ and the state to action-set trees (see ActionTree) <br>
+	 * The action trees are learned from one instance per state, labelled by all its allowed actions <br>
+	 * or by the lowest one (a deterministic controller), every tree is checked in the game
+	 */
+	public static void Ractions() {
+		ArrayList<String> filenames = new ArrayList<String>();
+		File[] files = new File("results/datasets").listFiles();
+		for (File file : files)
+		    if (file.isFile()) {
+		    	String name = datasetName(file, filenames);
+		    	if (name != null && (name.contains("bs") || name.contains("wash")))
+		    		if (name.contains("_C_"))
+		    			filenames.add(name);
+		    }
+
+		File directory = new File("results/reports/");
+		if (!directory.exists())
+			directory.mkdirs();
+		File outputFile = new File("results/reports/reprActions.txt");
+		String nl = System.getProperty("line.separator");
+        try(BufferedWriter writer = new BufferedWriter(Output.report(outputFile, false))) {
+        	writer.write(String.format("%108s","|DT+|"));
+        	writer.write(String.format("%18s","|AT allowed|"));
+        	writer.write(String.format("%18s","|AT chosen|"));
+        	writer.write(nl);
+
+        	writer.write(String.format("%-30s","Name"));
+        	writer.write(String.format("%12s","|S|"));
+        	writer.write(String.format("%6s","|I|"));
+        	writer.write(String.format("%6s","|O|"));
+        	writer.write(String.format("%16s","|Good|+|Bad|"));
+        	writer.write(String.format("%12s","States"));
+        	writer.write(String.format("%8s","Labels"));
+
+        	writer.write(String.format("%8s", "Size"));
+        	writer.write(String.format("%8s", "Time"));
+        	writer.write(" ?");
+
+        	writer.write(String.format("%8s", "Size"));
+        	writer.write(String.format("%8s", "Time"));
+        	writer.write(" ?");
+
+        	writer.write(String.format("%8s", "Size"));
+        	writer.write(String.format("%8s", "Time"));
+        	writer.write(" ?");
+
+        	writer.write(nl);
+        } catch (Exception e) {
+        	e.printStackTrace();
+        	return;
+        }
+
+    	for (int i=0; i<filenames.size(); i++) {
+
+    		GameInfo gameinfo;
+    		Pair<Game,Boolean> game;
+    		if (filenames.get(i).contains("wash")) {
+    			gameinfo = washGameInfo(filenames.get(i));
+    			game = washGame(gameinfo);
+    			if (game == null)
+    				continue;
+    		} else {
+    			gameinfo = new GameInfo();
+    			gameinfo.type = 'a'; gameinfo.filename = filenames.get(i).substring(6);
+    			game = Aiger.create(null, gameinfo.filename, 4);
+    			assert(game.second());
+    		}
+
+    		System.out.println(filenames.get(i));
+            try(BufferedWriter writer = new BufferedWriter(Output.report(outputFile, true))) {
+
+            	Dataset ds = new Dataset(filenames.get(i), writer);
+            	boolean reachability = (ds.objective == 'r');
+            	int stateAttributes = (ds.player == 1)?game.first().varStateP1no():game.first().varStateP2no();
+
+            	long startTime = System.nanoTime();
+            	DecisionTree dtplus = new DecisionTree(ds, true, true);
+            	double timedtplus = ((double) (System.nanoTime() - startTime)) / 1000000000.0;
+            	int sizedtplus = dtplus.numberOfInnerNodes;
+            	boolean resultdtplus = (reachability?Reachability.checkDT(game.first(), gameinfo, dtplus):
+            								Safety.checkDT(game.first(), gameinfo, dtplus));
+            	dtplus = null;
+            	System.gc();
+
+            	startTime = System.nanoTime();
+            	ActionDataset allowed = new ActionDataset(ds, stateAttributes, 'a');
+            	ActionTree atallowed = new ActionTree(allowed);
+            	double timeatallowed = ((double) (System.nanoTime() - startTime)) / 1000000000.0;
+            	boolean resultatallowed = (reachability?Reachability.checkDT(game.first(), gameinfo, atallowed):
+            								Safety.checkDT(game.first(), gameinfo, atallowed));
+
+            	startTime = System.nanoTime();
+            	ActionTree atchosen = new ActionTree(new ActionDataset(ds, stateAttributes, 'c'));
+            	double timeatchosen = ((double) (System.nanoTime() - startTime)) / 1000000000.0;
+            	boolean resultatchosen = (reachability?Reachability.checkDT(game.first(), gameinfo, atchosen):
+            								Safety.checkDT(game.first(), gameinfo, atchosen));
+
+            	writer.write(String.format("%12d", allowed.states.size()));
+            	writer.write(String.format("%8d", allowed.labels.size()));
+
+            	//DT plus chains
+            	writer.write(String.format("%8d", sizedtplus));
+            	writer.write(String.format("%8.2f", timedtplus));
+            	writer.write(" "+(resultdtplus?"W":"L"));
+
+            	//AT allowed actions
+            	writer.write(String.format("%8d", atallowed.numberOfInnerNodes));
+            	writer.write(String.format("%8.2f", timeatallowed));
+            	writer.write(" "+(resultatallowed?"W":"L"));
+
+            	//AT chosen action
+            	writer.write(String.format("%8d", atchosen.numberOfInnerNodes));
+            	writer.write(String.format("%8.2f", timeatchosen));
+            	writer.write(" "+(resultatchosen?"W":"L"));
+
+            	writer.write(nl);
+            } catch (Exception e) {
+            	e.printStackTrace();
+            }
+
+        	game = null;
+        	gameinfo = null;
+        	System.gc();
+    	}
 	}
 
 	/**
@@ -694,15 +1088,114 @@ public class Routine {
 
 			Dataset ds = new Dataset(game, s);
 			String dsname = (s.player==1?"1":"2") + "_" + s.objective + "_C_" + filename;
-			ds.arffFile(dsname, game, estimate);
+			Output.dataset(ds, dsname, game, estimate);
+			boolean res = Safety.checkBV(game, gameinfo, s);
 
 			System.out.print("Classical strategy saved in "+dsname+".arff... ");
-			System.out.println((Safety.check(game, gameinfo, dsname))?"and checked successfully":"ERROR - IT'S NOT WINNING");
+			System.out.println(res?"and checked successfully":"ERROR - IT'S NOT WINNING");
 
 			s = null;
 			ds = null;
 			System.out.println("FINISHED\n");
 		}
+		// the datasets are read by the next routines
+		Output.await();
+	}
+
+	/**
+	 * AIGER and WASH:: Games -> DT+ learned from all the state-action pairs, and from a sample grown by counterexamples
+	 * @param initial	Number of the states sampled at the start
+	 */
+	public static void Rcegis(int initial) {
+		ArrayList<String> filenames = new ArrayList<String>();
+		filenames.add("bs16n");
+		filenames.add("bs32n");
+		filenames.add("bs64n");
+		// the safety strategies of the Wash games with 2 and 3 tanks, as solved by 'w2' and 'w3'
+		ArrayList<String> washes = new ArrayList<String>();
+		File[] files = new File("results/datasets").listFiles();
+		if (files != null)
+			for (File file : files)
+			    if (file.isFile()) {
+			    	String name = datasetName(file, washes);
+			    	if (name != null && name.startsWith("2_s_C_") && (name.contains("wash_2") || name.contains("wash_3")))
+			    		washes.add(name);
+			    }
+		filenames.addAll(washes);
+
+		File directory = new File("results/reports/");
+		if (!directory.exists())
+			directory.mkdirs();
+		File outputFile = new File("results/reports/reprCegis.txt");
+		String nl = System.getProperty("line.separator");
+        try(BufferedWriter writer = new BufferedWriter(Output.report(outputFile, false))) {
+        	writer.write(String.format("%-30s","Name"));
+        	writer.write(String.format("%12s","|S|"));
+        	writer.write(String.format("%16s","|Good|+|Bad|"));
+        	writer.write(String.format("%18s","|DT+|"));
+        	writer.write(String.format("%36s","|CEGIS DT+|"));
+        	writer.write(nl);
+        } catch (Exception e) {
+        	e.printStackTrace();
+        	return;
+        }
+
+		for (int i=0; i<filenames.size(); i++) {
+			System.gc();
+			String filename = filenames.get(i);
+			System.out.println(filename);
+
+			GameInfo gameinfo;
+			Game game;
+			if (filename.contains("wash")) {
+				gameinfo = washGameInfo(filename);
+				Pair<Game,Boolean> result = washGame(gameinfo);
+				if (result == null)
+					continue;
+				game = result.first();
+				filename = gameinfo.filename;
+			} else {
+				gameinfo = new GameInfo();
+				gameinfo.type = 'a';
+				Pair<Game, Integer> result = Aiger.create(filename);
+				assert(result != null);
+				assert(result.first() != null & result.second() > -1);
+				game = result.first();
+			}
+			Strategy s = Safety.classical(game, gameinfo);
+
+            try(BufferedWriter writer = new BufferedWriter(Output.report(outputFile, true))) {
+            	writer.write(String.format("%-30s", filename));
+            	writer.write(String.format("%12d", game.stateSize));
+            	writer.write(String.format("%16d", s.bitvYES + s.bitvNO));
+
+            	long startTime = System.nanoTime();
+            	DecisionTree dt = new DecisionTree(new Dataset(game, s), true, true, 'p');
+            	double timedt = ((double) (System.nanoTime() - startTime)) / 1000000000.0;
+            	boolean resultdt = Safety.checkDT(game, gameinfo, dt);
+            	writer.write(String.format("%8d", dt.numberOfInnerNodes));
+            	writer.write(String.format("%8.2f", timedt));
+            	writer.write(" "+(resultdt?"W":"L"));
+            	dt = null;
+            	System.gc();
+
+            	startTime = System.nanoTime();
+            	Cegis cegis = new Cegis(game, gameinfo, s, initial, true, true, 'p');
+            	double timecegis = ((double) (System.nanoTime() - startTime)) / 1000000000.0;
+            	writer.write(String.format("%8d", cegis.tree.numberOfInnerNodes));
+            	writer.write(String.format("%8.2f", timecegis));
+            	writer.write(String.format("%4d", cegis.iterations));
+            	writer.write(String.format("%14s", cegis.sampledStates+"/"+cegis.labelledStates));
+            	writer.write(" "+(cegis.winning?"W":"L"));
+            	writer.write(nl);
+            } catch (Exception e) {
+            	e.printStackTrace();
+            }
+
+			s = null;
+			game = null;
+			gameinfo = null;
+		}
 	}
 
 }
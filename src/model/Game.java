@@ -1,6 +1,7 @@
 package model;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
@@ -70,6 +71,20 @@ public class Game {
 		return result;
 	}
 	
+	/**
+	 * Maps the values of the states of a player to their labels <br>
+	 * (the smallest label if several states have the same values)
+	 * @param player	States of this player
+	 * @return			Values -> state label
+	 */
+	public HashMap<ArrayList<Boolean>,Integer> valuesIntoNames(int player) {
+		HashMap<ArrayList<Boolean>,Integer> result = new HashMap<ArrayList<Boolean>,Integer>();
+		for (Integer key : states.keySet())
+			if (states.get(key).player == player && !result.containsKey(states.get(key).values))
+				result.put(states.get(key).values, key);
+		return result;
+	}
+	
 	/**
 	 * Returns the successor for a given state-action pair
 	 * @param gameinfo		Info about the game
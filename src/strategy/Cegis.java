@@ -0,0 +1,217 @@
+package strategy;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Random;
+import java.util.TreeSet;
+
+import machinelearning.CompiledTree;
+import machinelearning.Dataset;
+import machinelearning.DecisionTree;
+import model.Game;
+import model.GameInfo;
+import util.Pair;
+import util.Util;
+
+/**
+ * Counterexample-guided learning of a decision tree representing a given strategy <br>
+ * The tree is learned from the state-action pairs of a few sampled states only. <br>
+ * If it is not winning, the states where it allows an action the strategy does not <br>
+ * are added to the sample and the tree is learned again, until it is winning.
+ * @author vtoman - Viktor Toman
+ * viktor.toman@ist.ac.at
+ *
+ */
+public class Cegis {
+
+	public DecisionTree tree;
+	public boolean winning;
+	public int iterations;
+	public int sampledStates;
+	public int labelledStates; // states of the strategy
+	public int sampledInstances;
+
+	private final Game game;
+	private final GameInfo gameinfo;
+	private final Strategy strategy;
+	private final int stateBits;
+	private final int actionBits;
+	// state-action pairs of the strategy grouped by their states, and the YES actions of the states
+	private final HashMap<ArrayList<Boolean>,ArrayList<Pair<ArrayList<Boolean>,ArrayList<Boolean>>>> pairs;
+	private final HashMap<ArrayList<Boolean>,BitSet> yes;
+
+	/**
+	 * Learns the tree, the sample starts with randomly chosen states and grows by the counterexamples
+	 * @param game				Game of the strategy
+	 * @param gameinfo			Info about the game
+	 * @param strategy			Winning strategy ('s'afety or 'p'arity for player 2, 'r'eachability for player 1)
+	 * @param initial			Number of the states sampled at the start
+	 * @param uselookahead		See DecisionTree
+	 * @param allowdisjunction	See DecisionTree
+	 * @param buildmode			See DecisionTree
+	 */
+	public Cegis(Game game, GameInfo gameinfo, Strategy strategy, int initial,
+			boolean uselookahead, boolean allowdisjunction, char buildmode) {
+		assert(initial >= 1);
+		this.game = game;
+		this.gameinfo = gameinfo;
+		this.strategy = strategy;
+		this.stateBits = (strategy.player == 1)?game.varStateP1no():game.varStateP2no();
+		this.actionBits = (strategy.player == 1)?game.varActionP1no():game.varActionP2no();
+
+		this.pairs = new HashMap<ArrayList<Boolean>,ArrayList<Pair<ArrayList<Boolean>,ArrayList<Boolean>>>>();
+		this.yes = new HashMap<ArrayList<Boolean>,BitSet>();
+		for (Pair<ArrayList<Boolean>,ArrayList<Boolean>> key : strategy.bitv.keySet()) {
+			if (!pairs.containsKey(key.first())) {
+				pairs.put(key.first(), new ArrayList<Pair<ArrayList<Boolean>,ArrayList<Boolean>>>());
+				yes.put(key.first(), new BitSet());
+			}
+			pairs.get(key.first()).add(key);
+			if (strategy.bitv.get(key))
+				yes.get(key.first()).set(Util.decimal(key.second()));
+		}
+		this.labelledStates = pairs.size();
+
+		ArrayList<ArrayList<Boolean>> states = new ArrayList<ArrayList<Boolean>>(pairs.keySet());
+		Collections.shuffle(states, new Random(47));
+		LinkedHashSet<ArrayList<Boolean>> sample = new LinkedHashSet<ArrayList<Boolean>>(
+				states.subList(0, Math.min(initial, states.size())));
+
+		while (true) {
+			iterations++;
+			Dataset ds = dataset(sample);
+			sampledStates = sample.size();
+			sampledInstances = ds.instances.size();
+			tree = new DecisionTree(ds, uselookahead, allowdisjunction, buildmode);
+			CompiledTree compiled = tree.compile();
+			if (check(compiled)) {
+				winning = true;
+				return;
+			}
+
+			ArrayList<ArrayList<Boolean>> counterexamples = counterexamples(compiled);
+			int before = sample.size();
+			sample.addAll(counterexamples);
+			if (sample.size() == before)
+				return; // nothing to learn from, the tree agrees with the strategy wherever it plays
+		}
+	}
+
+	/**
+	 * @param sample	Sampled states
+	 * @return			Dataset of all the state-action pairs of the sampled states
+	 */
+	private Dataset dataset(LinkedHashSet<ArrayList<Boolean>> sample) {
+		Strategy part = new Strategy(strategy.player, strategy.objective);
+		for (ArrayList<Boolean> state : sample)
+			for (Pair<ArrayList<Boolean>,ArrayList<Boolean>> key : pairs.get(state)) {
+				boolean allowed = strategy.bitv.get(key);
+				part.bitv.put(key, allowed);
+				if (allowed)
+					part.bitvYES++;
+				else
+					part.bitvNO++;
+			}
+		return new Dataset(game, part);
+	}
+
+	private boolean check(CompiledTree compiled) {
+		switch (strategy.objective) {
+			case 's'	: return Safety.checkDT(game, gameinfo, compiled);
+			case 'r'	: return Reachability.checkDT(game, gameinfo, compiled);
+			default		: return Parity3.checkDT(game, gameinfo, compiled);
+		}
+	}
+
+	/**
+	 * Finds the states where the tree allows an action the strategy does not <br>
+	 * (allowing nothing counts as allowing everything, except for parity where it loses) <br>
+	 * Player 2 looks only at the states reached when playing by the tree, <br>
+	 * player 1 at all the states of the strategy (as Reachability.checkDT does).
+	 * @param compiled	The tree
+	 * @return			The counterexample states
+	 */
+	private ArrayList<ArrayList<Boolean>> counterexamples(CompiledTree compiled) {
+		ArrayList<ArrayList<Boolean>> result = new ArrayList<ArrayList<Boolean>>();
+		long[] sample = compiled.sample();
+
+		if (strategy.player == 1) {
+			for (ArrayList<Boolean> state : pairs.keySet())
+				if (!agrees(compiled, sample, state))
+					result.add(state);
+			return result;
+		}
+
+		LinkedList<Integer> queue = new LinkedList<Integer>();
+		TreeSet<Integer> flag = new TreeSet<Integer>();
+		queue.add(game.initialState);
+		flag.add(game.initialState);
+
+		while (queue.size() > 0) {
+			Integer from = queue.remove();
+			ArrayList<Boolean> state = game.states.get(from).values;
+			if (game.states.get(from).player == 2) { // restricted by the tree
+				if (!yes.containsKey(state)) continue; // reached only by a counterexample
+				if (!agrees(compiled, sample, state))
+					result.add(state);
+				long[] allowed = allowed(compiled, sample, state);
+				for (int i=0; i<Util.bitpower(actionBits); i++)
+					if ((allowed[i >>> 6] & (1L << i)) != 0) {
+						int into = game.successor(gameinfo, from, i, 1);
+						if (!flag.contains(into)) {
+							queue.add(into);
+							flag.add(into);
+						}
+					}
+			} else { // the opponent is allowed to move anywhere
+				for (Integer into : game.transitions.get(from))
+					if (!flag.contains(into)) {
+						queue.add(into);
+						flag.add(into);
+					}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return Actions the tree allows in the state, all of them if it allows none
+	 */
+	private long[] allowed(CompiledTree compiled, long[] sample, ArrayList<Boolean> state) {
+		CompiledTree.set(sample, 0, state);
+		long[] allowed = compiled.allowedActions(sample, stateBits, actionBits);
+		for (long word : allowed)
+			if (word != 0)
+				return allowed;
+		for (int i=0; i<Util.bitpower(actionBits); i++)
+			allowed[i >>> 6] |= 1L << i;
+		return allowed;
+	}
+
+	/**
+	 * @return Does the tree allow (something and) only the YES actions of the state?
+	 */
+	private boolean agrees(CompiledTree compiled, long[] sample, ArrayList<Boolean> state) {
+		CompiledTree.set(sample, 0, state);
+		long[] allowed = compiled.allowedActions(sample, stateBits, actionBits);
+		boolean something = false;
+		for (long word : allowed)
+			if (word != 0)
+				something = true;
+		if (!something) {
+			if (strategy.objective == 'p')
+				return false;
+			allowed = allowed(compiled, sample, state);
+		}
+		long[] good = yes.get(state).toLongArray();
+		for (int w=0; w<allowed.length; w++)
+			if ((allowed[w] & ~((w < good.length)?good[w]:0L)) != 0)
+				return false;
+		return true;
+	}
+
+}
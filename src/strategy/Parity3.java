@@ -7,6 +7,8 @@ import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import machinelearning.CompiledTree;
+import machinelearning.Controller;
 import machinelearning.DecisionTree;
 import model.Game;
 import model.GameInfo;
@@ -131,22 +133,12 @@ public class Parity3 {
 		assert(game != null);
 		
 		TreeMap<Integer, TreeSet<Integer>> allowed = new TreeMap<Integer, TreeSet<Integer>>();
-		HashMap<ArrayList<Boolean>,Integer> valuesIntoNames = new HashMap<ArrayList<Boolean>,Integer>();
+		HashMap<ArrayList<Boolean>,Integer> valuesIntoNames = game.valuesIntoNames(2);
 		
 		for (Pair<ArrayList<Boolean>,ArrayList<Boolean>> statebv : strategy.bitv.keySet())
 			if (strategy.bitv.get(statebv)) { // only work with YES state-action pairs
-				int from = -1;
-				if (valuesIntoNames.containsKey(statebv.first()))
-					from = valuesIntoNames.get(statebv.first());
-				else {
-					for (Integer key : game.states.keySet())
-						if (game.states.get(key).values.equals(statebv.first()) && game.states.get(key).player == 2) {
-							valuesIntoNames.put(statebv.first(), key);
-							from = key;
-							break;
-						}
-				}
-				assert(from != -1);
+				Integer from = valuesIntoNames.get(statebv.first());
+				assert(from != null);
 				
 				int action = Util.decimal(statebv.second());
 				int into = game.successor(gameinfo, from, action, 1);
@@ -201,7 +193,19 @@ public class Parity3 {
 	 * @return			Is the strategy winning?
 	 */
 	public static boolean checkDT(Game game, GameInfo gameinfo, DecisionTree tree) {
+		return checkDT(game, gameinfo, tree.compile());
+	}
+
+	/**
+	 * Plays according to the strategy represented by the controller
+	 * @param game		Play in this game
+	 * @param gameinfo	Info about the game
+	 * @param controller	Play according to this controller (a compiled DecisionTree or an ActionTree)
+	 * @return			Is the strategy winning?
+	 */
+	public static boolean checkDT(Game game, GameInfo gameinfo, Controller controller) {
 		assert(game != null);
+		long[] sample = controller.sample();
 		
 		LinkedList<Integer> queue = new LinkedList<Integer>();
 		TreeSet<Integer> flag = new TreeSet<Integer>();
@@ -224,12 +228,10 @@ public class Parity3 {
 			} else { // restricted by the strategy
 				assert(E.get(from).isEmpty());
 				boolean somethingallowed = false;
+				CompiledTree.set(sample, 0, game.states.get(from).values);
+				long[] allowed = controller.allowedActions(sample, game.varStateP2no(), game.varActionP2no());
 				for (int i=0; i<Util.bitpower(game.varActionP2no()); i++) {
-					ArrayList<Boolean> sample = new ArrayList<Boolean>(game.varStateP2no()+game.varActionP2no());
-					sample.addAll(game.states.get(from).values);
-					sample.addAll(Util.binary(game.varActionP2no(), i));
-					
-					boolean classification = tree.classify(sample);
+					boolean classification = (allowed[i >>> 6] & (1L << i)) != 0;
 					if (classification) {
 						somethingallowed = true;
 						int into = game.successor(gameinfo, from, i, 1);
@@ -1,17 +1,20 @@
 package strategy;
 
-import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
-import java.util.Scanner;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import machinelearning.ArffReader;
+import machinelearning.CompiledTree;
+import machinelearning.Controller;
 import machinelearning.DecisionTree;
 import model.Game;
 import model.GameInfo;
+import util.Pair;
 import util.Util;
 
 /**
@@ -178,139 +181,46 @@ public class Reachability {
 	public static boolean check(Game game, GameInfo gameinfo, String filename) {
 		assert(game != null);
 		
-		try (Scanner sc = new Scanner(new File("results/datasets/"+filename+".arff"))) {
-			String token;
-			int test;
-			
-			boolean now = false;
-			while (!now) {
-				token = sc.next();
-				if (token.equals("GENERATED:")) now = true;
-			}
-			test = sc.nextInt();
-			assert(test == game.stateSize);
-			
-			now = false;
-			while (!now) {
-				token = sc.next();
-				if (token.equals("STATEVARP1:")) now = true;
-			}
-			test = sc.nextInt();
-			assert(test == game.varStateP1no());
-			
-			now = false;
-			while (!now) {
-				token = sc.next();
-				if (token.equals("STATEVARP2:")) now = true;
-			}
-			test = sc.nextInt();
-			assert(test == game.varStateP2no());			
-			
-			now = false;
-			while (!now) {
-				token = sc.next();
-				if (token.equals("ACTIONVARP1:")) now = true;
-			}
-			test = sc.nextInt();
-			assert(test == game.varActionP1no());
-			
-			now = false;
-			while (!now) {
-				token = sc.next();
-				if (token.equals("ACTIONVARP2:")) now = true;
-			}
-			test = sc.nextInt();
-			assert(test == game.varActionP2no());			
-			
-			now = false;
-			while (!now) {
-				token = sc.next();
-				if (token.equals("PLAYER:")) now = true;
-			}
-			test = sc.nextInt();
-			assert(test == 1);
-			
-			now = false;
-			while (!now) {
-				token = sc.next();
-				if (token.equals("OBJECTIVE:")) now = true;
-			}
-			token = sc.next();
-			assert(token.equals("r"));
-			
-			now = false;
-			while (!now) {
-				token = sc.next();
-				if (token.equals("NUMTOT:")) now = true;
-			}
-			int samples = sc.nextInt();
-			
-			now = false;
-			while (!now) {
-				token = sc.next();
-				if (token.equals("@RELATION")) now = true;
-			}
-			token = sc.next();
-			assert(token.equals("strategy"));
-			
-			for (int i=0; i<game.varStateP1no()+game.varActionP1no(); i++) {
-				token = sc.next();
-				assert(token.equals("@ATTRIBUTE"));
-				sc.next(); token = sc.next();
-				assert(token.equals("{0,1}"));
-			}
-			
-			token = sc.next();
-			assert(token.equals("@ATTRIBUTE"));
-			token = sc.next();
-			assert(token.equals("\"class\""));
-			token = sc.next();
-			assert(token.equals("{yes,no}"));
-			token = sc.next();
-			assert(token.equals("@DATA"));
+		try (ArffReader reader = ArffReader.open(filename)) {
+			assert(reader.headerInt("STATES GENERATED") == game.stateSize);
+			assert(reader.headerInt("STATEVARP1") == game.varStateP1no());
+			assert(reader.headerInt("STATEVARP2") == game.varStateP2no());
+			assert(reader.headerInt("ACTIONVARP1") == game.varActionP1no());
+			assert(reader.headerInt("ACTIONVARP2") == game.varActionP2no());
+			assert(reader.headerInt("PLAYER") == 1);
+			assert(reader.header("OBJECTIVE").equals("r"));
+			int samples = reader.headerInt("NUMTOT");
+			assert(reader.relation.equals("strategy"));
+			assert(reader.attributes.size() == game.varStateP1no()+game.varActionP1no());
 			
 			// now begins the strategy
 			
 			TreeMap<Integer, TreeSet<Integer>> str = new TreeMap<Integer, TreeSet<Integer>>();
-			HashMap<ArrayList<Boolean>,Integer> valuesIntoNames = new HashMap<ArrayList<Boolean>,Integer>();
+			HashMap<ArrayList<Boolean>,Integer> valuesIntoNames = game.valuesIntoNames(1);
 			
+			long[] row = new long[reader.rowWords()];
 			for (int i=0; i<samples; i++) {
-				token = sc.next();
+				if (!reader.next(row))
+					throw new IOException("ARFF file "+filename+" ends after "+i+" of "+samples+" rows");
 				ArrayList<Boolean> newb = new ArrayList<Boolean>(game.varStateP1no());
 				for (int j=0; j<game.varStateP1no(); j++)
-					newb.add(token.charAt(2*j) == '1');
+					newb.add(ArffReader.bit(row, j));
 				
-				int from = -1;
-				if (valuesIntoNames.containsKey(newb))
-					from = valuesIntoNames.get(newb);
-				else {
-					for (Integer key : game.states.keySet())
-						if (game.states.get(key).values.equals(newb) && game.states.get(key).player == 1) {
-							valuesIntoNames.put(newb, key);
-							from = key;
-							break;
-						}
-				}
-				
-				newb = new ArrayList<Boolean>(game.varActionP1no());
-				for (int j=0; j<game.varActionP1no(); j++)
-					newb.add(token.charAt(2*game.varStateP1no()+2*j) == '1');
+				Integer from = valuesIntoNames.get(newb);
+				assert(from != null);
 				
-				if (token.charAt(2*game.varStateP1no()+2*game.varActionP1no()) == 'y') {
-					int label = Util.decimal(newb);
+				if (ArffReader.bit(row, game.varStateP1no()+game.varActionP1no())) {
+					int label = ArffReader.decimal(row, game.varStateP1no(), game.varActionP1no());
 					int into = game.successor(gameinfo, from, label, 2);
 					if (!str.containsKey(from))
 						str.put(from, new TreeSet<Integer>());
 					str.get(from).add(into);
-				} else
-					assert(token.charAt(2*game.varStateP1no()+2*game.varActionP1no()) == 'n');
+				}
 			}
 			
 			// we parsed the strategy, now we play by it
 			
-	        Ranks.entireP1restricted(game, 1, str);
-	        
-	        return (game.states.get(game.initialState).rank != -1);
+			return play(game, str);
 			
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -318,6 +228,44 @@ public class Reachability {
 		}
 	}
 	
+	/**
+	 * Plays according to the given P1 strategy, without writing it into a file and reading it back
+	 * @param game		Play in this game
+	 * @param gameinfo	Info about the game
+	 * @param strategy	Strategy for player 1
+	 * @return			Is the strategy winning?
+	 */
+	public static boolean checkBV(Game game, GameInfo gameinfo, Strategy strategy) {
+		assert(game != null);
+		
+		TreeMap<Integer, TreeSet<Integer>> str = new TreeMap<Integer, TreeSet<Integer>>();
+		HashMap<ArrayList<Boolean>,Integer> valuesIntoNames = game.valuesIntoNames(1);
+		
+		for (Pair<ArrayList<Boolean>,ArrayList<Boolean>> statebv : strategy.bitv.keySet())
+			if (strategy.bitv.get(statebv)) { // only work with YES state-action pairs
+				Integer from = valuesIntoNames.get(statebv.first());
+				assert(from != null);
+				int into = game.successor(gameinfo, from, Util.decimal(statebv.second()), 2);
+				if (!str.containsKey(from))
+					str.put(from, new TreeSet<Integer>());
+				str.get(from).add(into);
+			}
+		
+		return play(game, str);
+	}
+	
+	/**
+	 * Plays according to a parsed strategy
+	 * @param game	Play in this game
+	 * @param str	Allowed successors of the P1 states
+	 * @return		Is the strategy winning?
+	 */
+	private static boolean play(Game game, TreeMap<Integer, TreeSet<Integer>> str) {
+        Ranks.entireP1restricted(game, 1, str);
+        
+        return (game.states.get(game.initialState).rank != -1);
+	}
+	
 	/**
 	 * Plays according to the strategy represented by the decision tree
 	 * @param game		Play in this game
@@ -326,18 +274,28 @@ public class Reachability {
 	 * @return			Is the strategy winning?
 	 */
 	public static boolean checkDT(Game game, GameInfo gameinfo, DecisionTree tree) {
+		return checkDT(game, gameinfo, tree.compile());
+	}
+
+	/**
+	 * Plays according to the strategy represented by the controller
+	 * @param game		Play in this game
+	 * @param gameinfo	Info about the game
+	 * @param controller	Play according to this controller (a compiled DecisionTree or an ActionTree)
+	 * @return			Is the strategy winning?
+	 */
+	public static boolean checkDT(Game game, GameInfo gameinfo, Controller controller) {
+		long[] sample = controller.sample();
 		TreeMap<Integer, TreeSet<Integer>> str = new TreeMap<Integer, TreeSet<Integer>>();
 		
 		for (Integer from : game.states.keySet())
 			if (game.states.get(from).player == 1 && !game.states.get(from).target
 					&& !(game.transitions.get(from).size() == 1 && game.transitions.get(from).contains(from))) {
 				boolean somethingallowed = false;
+				CompiledTree.set(sample, 0, game.states.get(from).values);
+				long[] allowed = controller.allowedActions(sample, game.varStateP1no(), game.varActionP1no());
 				for (int i=0; i<Util.bitpower(game.varActionP1no()); i++) {
-					ArrayList<Boolean> sample = new ArrayList<Boolean>(game.varStateP1no()+game.varActionP1no());
-					sample.addAll(game.states.get(from).values);
-					sample.addAll(Util.binary(game.varActionP1no(), i));
-					
-					boolean classification = tree.classify(sample);
+					boolean classification = (allowed[i >>> 6] & (1L << i)) != 0;
 					if (classification) {
 						somethingallowed = true;
 						int into = game.successor(gameinfo, from, i, 2);
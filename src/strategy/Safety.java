@@ -1,17 +1,20 @@
 package strategy;
 
-import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
-import java.util.Scanner;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import machinelearning.ArffReader;
+import machinelearning.CompiledTree;
+import machinelearning.Controller;
 import machinelearning.DecisionTree;
 import model.Game;
 import model.GameInfo;
+import util.Pair;
 import util.Util;
 
 /**
@@ -176,167 +179,104 @@ public class Safety {
 	public static boolean check(Game game, GameInfo gameinfo, String filename) {
 		assert(game != null);
 		
-		try (Scanner sc = new Scanner(new File("results/datasets/"+filename+".arff"))) {
-			String token;
-			int test;
-			
-			boolean now = false;
-			while (!now) {
-				token = sc.next();
-				if (token.equals("GENERATED:")) now = true;
-			}
-			test = sc.nextInt();
-			assert(test == game.stateSize);
-			
-			now = false;
-			while (!now) {
-				token = sc.next();
-				if (token.equals("STATEVARP1:")) now = true;
-			}
-			test = sc.nextInt();
-			assert(test == game.varStateP1no());
-			
-			now = false;
-			while (!now) {
-				token = sc.next();
-				if (token.equals("STATEVARP2:")) now = true;
-			}
-			test = sc.nextInt();
-			assert(test == game.varStateP2no());			
-			
-			now = false;
-			while (!now) {
-				token = sc.next();
-				if (token.equals("ACTIONVARP1:")) now = true;
-			}
-			test = sc.nextInt();
-			assert(test == game.varActionP1no());
-			
-			now = false;
-			while (!now) {
-				token = sc.next();
-				if (token.equals("ACTIONVARP2:")) now = true;
-			}
-			test = sc.nextInt();
-			assert(test == game.varActionP2no());			
-			
-			now = false;
-			while (!now) {
-				token = sc.next();
-				if (token.equals("PLAYER:")) now = true;
-			}
-			test = sc.nextInt();
-			assert(test == 2);
-			
-			now = false;
-			while (!now) {
-				token = sc.next();
-				if (token.equals("OBJECTIVE:")) now = true;
-			}
-			token = sc.next();
-			assert(token.equals("s"));
-			
-			now = false;
-			while (!now) {
-				token = sc.next();
-				if (token.equals("NUMTOT:")) now = true;
-			}
-			int samples = sc.nextInt();
-			
-			now = false;
-			while (!now) {
-				token = sc.next();
-				if (token.equals("@RELATION")) now = true;
-			}
-			token = sc.next();
-			assert(token.equals("strategy"));
-			
-			for (int i=0; i<game.varStateP2no()+game.varActionP2no(); i++) {
-				token = sc.next();
-				assert(token.equals("@ATTRIBUTE"));
-				sc.next(); token = sc.next();
-				assert(token.equals("{0,1}"));
-			}
-			
-			token = sc.next();
-			assert(token.equals("@ATTRIBUTE"));
-			token = sc.next();
-			assert(token.equals("\"class\""));
-			token = sc.next();
-			assert(token.equals("{yes,no}"));
-			token = sc.next();
-			assert(token.equals("@DATA"));
+		try (ArffReader reader = ArffReader.open(filename)) {
+			assert(reader.headerInt("STATES GENERATED") == game.stateSize);
+			assert(reader.headerInt("STATEVARP1") == game.varStateP1no());
+			assert(reader.headerInt("STATEVARP2") == game.varStateP2no());
+			assert(reader.headerInt("ACTIONVARP1") == game.varActionP1no());
+			assert(reader.headerInt("ACTIONVARP2") == game.varActionP2no());
+			assert(reader.headerInt("PLAYER") == 2);
+			assert(reader.header("OBJECTIVE").equals("s"));
+			int samples = reader.headerInt("NUMTOT");
+			assert(reader.relation.equals("strategy"));
+			assert(reader.attributes.size() == game.varStateP2no()+game.varActionP2no());
 			
 			// now begins the strategy
 			
 			TreeMap<Integer, TreeSet<Integer>> str = new TreeMap<Integer, TreeSet<Integer>>();
-			HashMap<ArrayList<Boolean>,Integer> valuesIntoNames = new HashMap<ArrayList<Boolean>,Integer>();
+			HashMap<ArrayList<Boolean>,Integer> valuesIntoNames = game.valuesIntoNames(2);
 			
+			long[] row = new long[reader.rowWords()];
 			for (int i=0; i<samples; i++) {
-				token = sc.next();
+				if (!reader.next(row))
+					throw new IOException("ARFF file "+filename+" ends after "+i+" of "+samples+" rows");
 				ArrayList<Boolean> newb = new ArrayList<Boolean>(game.varStateP2no());
-				for (int j=0; j<game.varStateP2no(); j++) {
-					assert(token.charAt(2*j) == '0' || token.charAt(2*j) == '1');
-					newb.add(token.charAt(2*j) == '1');
-				}
-				
-				int from = -1;
-				if (valuesIntoNames.containsKey(newb))
-					from = valuesIntoNames.get(newb);
-				else {
-					for (Integer key : game.states.keySet())
-						if (game.states.get(key).values.equals(newb) && game.states.get(key).player == 2) {
-							valuesIntoNames.put(newb, key);
-							from = key;
-							break;
-						}
-				}
-				
-				assert(from != -1);
+				for (int j=0; j<game.varStateP2no(); j++)
+					newb.add(ArffReader.bit(row, j));
 				
-				newb = new ArrayList<Boolean>(game.varActionP2no());
-				for (int j=0; j<game.varActionP2no(); j++)
-					newb.add(token.charAt(2*game.varStateP2no()+2*j) == '1');
+				Integer from = valuesIntoNames.get(newb);
+				assert(from != null);
 				
-				if (token.charAt(2*game.varStateP2no()+2*game.varActionP2no()) == 'y') {
-					int label = Util.decimal(newb);
+				if (ArffReader.bit(row, game.varStateP2no()+game.varActionP2no())) {
+					int label = ArffReader.decimal(row, game.varStateP2no(), game.varActionP2no());
 					int into = game.successor(gameinfo, from, label, 1);
 					if (!str.containsKey(from))
 						str.put(from, new TreeSet<Integer>());
 					str.get(from).add(into);
-				} else
-					assert(token.charAt(2*game.varStateP2no()+2*game.varActionP2no()) == 'n');
+				}
 			}
 			
 			// we parsed the strategy, now we play by it
 			
-	        LinkedList<Integer> queue = new LinkedList<Integer>();
-			TreeSet<Integer> flag = new TreeSet<Integer>();
-			queue.add(game.initialState);
-			flag.add(game.initialState);
+			return play(game, str);
 			
-			while (queue.size() > 0) {
-				Integer from = queue.remove();
-				if (game.states.get(from).player == 2) { // restricted by the strategy
-					if (str.containsKey(from)) {
-						assert(!str.get(from).isEmpty());
-						for (Integer into : str.get(from)) {
-							if (game.states.get(into).target) return false;
-							if (!flag.contains(into)) {
-								queue.add(into);
-								flag.add(into);
-							}
-						}
-					} else { // everything forbidden means the same as everything allowed
-						for (Integer into : game.transitions.get(from)) {
-							if (game.states.get(into).target) return false;
-							if (!flag.contains(into)) {
-								queue.add(into);
-								flag.add(into);
-							}							
+		} catch (Exception e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+	
+	/**
+	 * Plays according to the given P2 strategy, without writing it into a file and reading it back
+	 * @param game		Play in this game
+	 * @param gameinfo	Info about the game
+	 * @param strategy	Strategy for player 2
+	 * @return			Is the strategy winning?
+	 */
+	public static boolean checkBV(Game game, GameInfo gameinfo, Strategy strategy) {
+		assert(game != null);
+		
+		TreeMap<Integer, TreeSet<Integer>> str = new TreeMap<Integer, TreeSet<Integer>>();
+		HashMap<ArrayList<Boolean>,Integer> valuesIntoNames = game.valuesIntoNames(2);
+		
+		for (Pair<ArrayList<Boolean>,ArrayList<Boolean>> statebv : strategy.bitv.keySet())
+			if (strategy.bitv.get(statebv)) { // only work with YES state-action pairs
+				Integer from = valuesIntoNames.get(statebv.first());
+				assert(from != null);
+				int into = game.successor(gameinfo, from, Util.decimal(statebv.second()), 1);
+				if (!str.containsKey(from))
+					str.put(from, new TreeSet<Integer>());
+				str.get(from).add(into);
+			}
+		
+		return play(game, str);
+	}
+	
+	/**
+	 * Plays according to a parsed strategy
+	 * @param game	Play in this game
+	 * @param str	Allowed successors of the P2 states (a missing state allows all of them)
+	 * @return		Is the strategy winning?
+	 */
+	private static boolean play(Game game, TreeMap<Integer, TreeSet<Integer>> str) {
+        LinkedList<Integer> queue = new LinkedList<Integer>();
+		TreeSet<Integer> flag = new TreeSet<Integer>();
+		queue.add(game.initialState);
+		flag.add(game.initialState);
+		
+		while (queue.size() > 0) {
+			Integer from = queue.remove();
+			if (game.states.get(from).player == 2) { // restricted by the strategy
+				if (str.containsKey(from)) {
+					assert(!str.get(from).isEmpty());
+					for (Integer into : str.get(from)) {
+						if (game.states.get(into).target) return false;
+						if (!flag.contains(into)) {
+							queue.add(into);
+							flag.add(into);
 						}
 					}
-				} else { // the opponent is allowed to move anywhere
+				} else { // everything forbidden means the same as everything allowed
 					for (Integer into : game.transitions.get(from)) {
 						if (game.states.get(into).target) return false;
 						if (!flag.contains(into)) {
@@ -345,11 +285,15 @@ public class Safety {
 						}							
 					}
 				}
+			} else { // the opponent is allowed to move anywhere
+				for (Integer into : game.transitions.get(from)) {
+					if (game.states.get(into).target) return false;
+					if (!flag.contains(into)) {
+						queue.add(into);
+						flag.add(into);
+					}							
+				}
 			}
-			
-		} catch (Exception e) {
-			e.printStackTrace();
-			return false;
 		}
 		
 		return true;
@@ -363,6 +307,18 @@ public class Safety {
 	 * @return			Is the strategy winning?
 	 */
 	public static boolean checkDT(Game game, GameInfo gameinfo, DecisionTree tree) {
+		return checkDT(game, gameinfo, tree.compile());
+	}
+
+	/**
+	 * Plays according to the strategy represented by the controller
+	 * @param game		Play in this game
+	 * @param gameinfo	Info about the game
+	 * @param controller	Play according to this controller (a compiled DecisionTree or an ActionTree)
+	 * @return			Is the strategy winning?
+	 */
+	public static boolean checkDT(Game game, GameInfo gameinfo, Controller controller) {
+		long[] sample = controller.sample();
 		
         LinkedList<Integer> queue = new LinkedList<Integer>();
 		TreeSet<Integer> flag = new TreeSet<Integer>();
@@ -374,12 +330,10 @@ public class Safety {
 			if (game.states.get(from).player == 2) { // restricted by the strategy
 				
 				boolean somethingallowed = false;
+				CompiledTree.set(sample, 0, game.states.get(from).values);
+				long[] allowed = controller.allowedActions(sample, game.varStateP2no(), game.varActionP2no());
 				for (int i=0; i<Util.bitpower(game.varActionP2no()); i++) {
-					ArrayList<Boolean> sample = new ArrayList<Boolean>(game.varStateP2no()+game.varActionP2no());
-					sample.addAll(game.states.get(from).values);
-					sample.addAll(Util.binary(game.varActionP2no(), i));
-					
-					boolean classification = tree.classify(sample);
+					boolean classification = (allowed[i >>> 6] & (1L << i)) != 0;
 					if (classification) {
 						somethingallowed = true;
 						int into = game.successor(gameinfo, from, i, 1);